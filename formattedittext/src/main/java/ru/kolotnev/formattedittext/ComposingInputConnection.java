@@ -0,0 +1,39 @@
+package ru.kolotnev.formattedittext;
+
+import android.view.inputmethod.InputConnection;
+import android.view.inputmethod.InputConnectionWrapper;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Input connection which notifies input field when IME finishes composing
+ * of text without changing it, so deferred formatting may be done.
+ * <p>
+ * Since API 24 composing is also finished when connection is closed, e.g.
+ * on focus loss or IME switch; then target finishes composing by itself
+ * without calling this wrapper.
+ * <p>
+ * Kolotnev Pavel, 2015-2020
+ */
+final class ComposingInputConnection extends InputConnectionWrapper {
+	@NonNull
+	private final Runnable onComposingFinished;
+
+	ComposingInputConnection(@NonNull InputConnection target, @NonNull Runnable onComposingFinished) {
+		super(target, true);
+		this.onComposingFinished = onComposingFinished;
+	}
+
+	@Override
+	public boolean finishComposingText() {
+		boolean result = super.finishComposingText();
+		onComposingFinished.run();
+		return result;
+	}
+
+	@Override
+	public void closeConnection() {
+		super.closeConnection();
+		onComposingFinished.run();
+	}
+}
@@ -9,12 +9,9 @@ import android.util.AttributeSet;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.appcompat.widget.AppCompatEditText;
 
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.text.NumberFormat;
 import java.util.Currency;
 import java.util.Locale;
 
@@ -24,7 +21,7 @@ import java.util.Locale;
  * Kolotnev Pavel, 2015-2020
  */
 @SuppressWarnings("unused")
-public class CurrencyEditText extends AppCompatEditText {
+public class CurrencyEditText extends FormattedEditText {
 	private static final String TAG = "CurrencyEditText";
 
 	@NonNull
@@ -33,36 +30,49 @@ public class CurrencyEditText extends AppCompatEditText {
 	private Currency currency;
 	@NonNull
 	private BigDecimal value = BigDecimal.ZERO;
-	private String current = "";
-
+	private boolean freeFormInput = false;
+	@NonNull
+	private final DecimalInputState inputState = new DecimalInputState(false, 2);
+	@NonNull
+	private final EditTracker tracker = new EditTracker();
 	private final TextWatcher textWatcher = new TextWatcher() {
 		private boolean isDeleting;
 
 		@Override
 		public void beforeTextChanged(CharSequence s, int start, int count, int after) {
 			isDeleting = after <= 0 && count > 0;
-			/*if (!s.toString().equals(current)) {
-				removeTextChangedListener(this);
-				String cleanString = s.toString().replaceAll("[^\\d]", "");
-				setText(cleanString);
-				addTextChangedListener(this);
-			}*/
 		}
 
 		@Override
 		public void onTextChanged(CharSequence s, int start, int before, int count) {
-			/* do nothing */
+			tracker.onTextChanged(s, start, before, count);
 		}
 
 		@Override
 		public void afterTextChanged(@NonNull Editable s) {
-			//Log.i(TAG, "::afterTextChanged:" + "Editable " + s + "; Current " + current);
-			String str = s.toString();
-			if (str.length() > 0 && str.equals(current)) {
+			// Text will be formatted when IME finishes composing
+			if (deferWhileComposing(s))
+				return;
+
+			// Nothing was changed since text was formatted
+			if (s.length() > 0 && tracker.isFormatted()) {
+				FormatMetrics.countSkippedEdit(CurrencyEditText.this);
+				tracker.skipEdits();
 				return;
 			}
 
-			parseValue(str);
+			if (freeFormInput) {
+				parseEdit(s);
+			} else {
+				parseValue(s.toString());
+			}
+			recordEdit(value.toPlainString(), 0);
+			updateText();
+		}
+	};
+	private final Runnable batchUpdate = new Runnable() {
+		@Override
+		public void run() {
 			updateText();
 		}
 	};
@@ -93,6 +103,8 @@ public class CurrencyEditText extends AppCompatEditText {
 				}
 			} else if (at == R.styleable.CurrencyEditText_currency) {
 				currency = Currency.getInstance(a.getString(at));
+			} else if (at == R.styleable.CurrencyEditText_freeFormInput) {
+				freeFormInput = a.getBoolean(at, freeFormInput);
 			}
 		}
 		a.recycle();
@@ -102,12 +114,10 @@ public class CurrencyEditText extends AppCompatEditText {
 		}
 		this.locale = locale;
 		if (currency == null) {
-			currency = NumberFormat.getCurrencyInstance(locale).getCurrency();
-		}
-		if (currency == null) {
-			currency = Currency.getInstance("USD");
+			currency = FormatterCache.getDefaultCurrency(locale);
 		}
 		this.currency = currency;
+		inputState.setMaxFractionDigits(currency.getDefaultFractionDigits());
 
 		setInputType(getInputType()
 				| InputType.TYPE_CLASS_NUMBER
@@ -117,8 +127,24 @@ public class CurrencyEditText extends AppCompatEditText {
 		setText(getText());
 	}
 
+	@Override
+	void onComposingFinished(@NonNull Editable text) {
+		textWatcher.afterTextChanged(text);
+	}
+
+	@Override
+	void restoreState(@NonNull String state, int cursor) {
+		value = new BigDecimal(state);
+		if (freeFormInput)
+			value = inputState.setValue(value);
+		updateText();
+	}
+
 	/**
 	 * Get current decimal value for currency.
+	 * <p>
+	 * While IME is composing text value is not updated, it is stale until
+	 * composing is finished.
 	 *
 	 * @return Decimal value.
 	 */
@@ -135,6 +161,9 @@ public class CurrencyEditText extends AppCompatEditText {
 	 */
 	public void setValue(@NonNull BigDecimal bigDecimal) {
 		value = bigDecimal;
+		if (freeFormInput)
+			value = inputState.setValue(value);
+		resetHistory(value.toPlainString(), 0);
 		updateText();
 	}
 
@@ -177,73 +206,91 @@ public class CurrencyEditText extends AppCompatEditText {
 	 */
 	public void setCurrency(@NonNull Currency currency) {
 		this.currency = currency;
+		if (freeFormInput) {
+			inputState.setMaxFractionDigits(currency.getDefaultFractionDigits());
+			value = inputState.getValue();
+		}
+		resetHistory(value.toPlainString(), 0);
 		updateText();
 	}
 
 	/**
-	 * Parses value from text in edit field.
+	 * Checks if free-form typing is enabled.
 	 *
-	 * @param str
-	 * 		String with digits.
+	 * @return True if decimal separator is typed by user, false if
+	 * typed digits are shifted into fraction part.
 	 */
-	private void parseValue(@NonNull String str) {
-		// Remove all non numeric chars
-		String cleanString = str.replaceAll("[^\\d]", "");
-		if (cleanString.length() > 0) {
-			// Construct decimal value as only integer value and move
-			// fraction point for two places.
-			value = new BigDecimal(cleanString)
-					.setScale(2, BigDecimal.ROUND_FLOOR)
-					.divide(new BigDecimal(100), BigDecimal.ROUND_FLOOR);
-		} else {
-			// Input field have no any digit
-			value = BigDecimal.ZERO;
-		}
+	public boolean isFreeFormInput() {
+		return freeFormInput;
 	}
 
 	/**
-	 * Returns decimal formatter for specified currency.
+	 * Sets mode of typing. In free-form mode decimal separator is typed by
+	 * user, otherwise every typed digit shifts existing digits left and
+	 * the last two digits are fraction part.
 	 *
-	 * @return Currency formatter for current locale and currency.
+	 * @param freeFormInput
+	 * 		Enable free-form typing.
 	 */
-	@NonNull
-	private DecimalFormat getCurrencyFormatter() {
-		NumberFormat.getCurrencyInstance();
-		NumberFormat format = NumberFormat.getCurrencyInstance(locale);
-		format.setMaximumFractionDigits(currency.getDefaultFractionDigits());
-		format.setCurrency(currency);
-		return (DecimalFormat) format;
+	public void setFreeFormInput(boolean freeFormInput) {
+		this.freeFormInput = freeFormInput;
+		if (freeFormInput) {
+			inputState.setMaxFractionDigits(currency.getDefaultFractionDigits());
+			value = inputState.setValue(value);
+		}
+		resetHistory(value.toPlainString(), 0);
+		updateText();
 	}
 
-	private void updateText() {
-		DecimalFormat formatter = getCurrencyFormatter();
-
-		current = formatter.format(value);
-
-		// Now we need to find clear string without currency symbols
-		DecimalFormatSymbols symbols = formatter.getDecimalFormatSymbols();
-		symbols.setCurrencySymbol("");
-		formatter.setDecimalFormatSymbols(symbols);
-		String formattedClear = formatter.format(value);
-
-		// Currency symbols may be placed with spaces (e.g. nbsp) at start or at end of string
-		int start = 0;
-		if (Character.isSpaceChar(formattedClear.charAt(start)))
-			++start;
+	/**
+	 * Parses value from text in edit field.
+	 *
+	 * @param str
+	 * 		String with digits.
+	 */
+	private void parseValue(@NonNull String str) {
+		long time = FormatMetrics.begin(FormatMetrics.PHASE_PARSE);
+		value = CurrencyFormatter.parse(str);
+		FormatMetrics.end(this, FormatMetrics.PHASE_PARSE, time);
+	}
 
-		int end = formattedClear.length() - 1;
-		if (Character.isSpaceChar(formattedClear.charAt(end)))
-			--end;
+	private void parseEdit(@NonNull Editable text) {
+		long time = FormatMetrics.begin(FormatMetrics.PHASE_PARSE);
+		inputState.setLocale(locale);
+		tracker.parse(text, inputState);
+		value = inputState.getValue();
+		FormatMetrics.end(this, FormatMetrics.PHASE_PARSE, time);
+	}
 
-		// Trim spaces (String.trim() may skip most spaces)
-		formattedClear = formattedClear.substring(start, end + 1);
+	private void updateText() {
+		if (FormatBatch.defer(batchUpdate)) {
+			tracker.invalidate();
+			return;
+		}
 
-		// Set position of cursor at end of clear string in formatted string
-		int pos = current.indexOf(formattedClear) + formattedClear.length();
+		long time = FormatMetrics.begin(FormatMetrics.PHASE_FORMAT);
+		String current;
+		int pos;
+		if (freeFormInput) {
+			DecimalFormat formatter = FormatterCache.getCurrencyFormat(locale, currency, false);
+			String number = inputState.format(locale);
+			current = formatter.getPositivePrefix() + number + formatter.getPositiveSuffix();
+			pos = formatter.getPositivePrefix().length() + number.length();
+			// Currency symbol may contain separators, so only number is parsed after edit
+			tracker.setText(current, formatter.getPositivePrefix().length(), pos);
+		} else {
+			current = CurrencyFormatter.format(value, locale, currency);
+			pos = CurrencyFormatter.getSelection(current, value, locale, currency);
+			tracker.setText(current, -1, -1);
+		}
+		FormatMetrics.end(this, FormatMetrics.PHASE_FORMAT, time);
 
+		time = FormatMetrics.begin(FormatMetrics.PHASE_APPLY);
 		removeTextChangedListener(textWatcher);
 		setText(current);
-		setSelection(Math.min(pos, current.length()));
+		setSelection(pos);
 		addTextChangedListener(textWatcher);
+		FormatMetrics.end(this, FormatMetrics.PHASE_APPLY, time);
+		FormatMetrics.countSetText(this);
 	}
 }
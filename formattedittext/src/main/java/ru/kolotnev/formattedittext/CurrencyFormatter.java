@@ -0,0 +1,112 @@
+package ru.kolotnev.formattedittext;
+
+import androidx.annotation.NonNull;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.Locale;
+
+/**
+ * Formatting and parsing of currency exactly like in {@link CurrencyEditText},
+ * but without any view. Methods may be called from any thread.
+ * <p>
+ * Kolotnev Pavel, 2015-2020
+ */
+@SuppressWarnings("unused")
+public final class CurrencyFormatter {
+	private CurrencyFormatter() {
+		/* no instances */
+	}
+
+	/**
+	 * Formats value with currency symbol.
+	 *
+	 * @param value
+	 * 		Decimal value.
+	 * @param locale
+	 * 		Locale of formatting.
+	 * @param currency
+	 * 		Currency.
+	 *
+	 * @return Formatted currency.
+	 */
+	@NonNull
+	public static String format(@NonNull BigDecimal value, @NonNull Locale locale, @NonNull Currency currency) {
+		return FormatterCache.getCurrencyFormat(locale, currency, false).format(value);
+	}
+
+	/**
+	 * Formats value with default currency of locale.
+	 *
+	 * @param value
+	 * 		Decimal value.
+	 * @param locale
+	 * 		Locale of formatting.
+	 *
+	 * @return Formatted currency.
+	 */
+	@NonNull
+	public static String format(@NonNull BigDecimal value, @NonNull Locale locale) {
+		return format(value, locale, FormatterCache.getDefaultCurrency(locale));
+	}
+
+	/**
+	 * Parses value from text, every digit in text is treated as part of
+	 * integer value and fraction point is moved for two places.
+	 * Digits of all scripts are accepted.
+	 *
+	 * @param str
+	 * 		Text with digits.
+	 *
+	 * @return Decimal value, ZERO if text have no any digit.
+	 */
+	@NonNull
+	public static BigDecimal parse(@NonNull String str) {
+		// Remove all non numeric chars
+		String cleanString = Digits.clean(str, false);
+		if (cleanString.length() == 0) {
+			// Text have no any digit
+			return BigDecimal.ZERO;
+		}
+		// Construct decimal value as only integer value and move
+		// fraction point for two places.
+		return new BigDecimal(cleanString)
+				.setScale(2, BigDecimal.ROUND_FLOOR)
+				.divide(new BigDecimal(100), BigDecimal.ROUND_FLOOR);
+	}
+
+	/**
+	 * Returns position of cursor in formatted text right after the last digit.
+	 *
+	 * @param text
+	 * 		Text formatted with currency symbol.
+	 * @param value
+	 * 		Decimal value of text.
+	 * @param locale
+	 * 		Locale of formatting.
+	 * @param currency
+	 * 		Currency.
+	 *
+	 * @return Position of cursor.
+	 */
+	static int getSelection(@NonNull String text, @NonNull BigDecimal value, @NonNull Locale locale, @NonNull Currency currency) {
+		// Now we need to find clear string without currency symbols
+		String formattedClear = FormatterCache.getCurrencyFormat(locale, currency, true).format(value);
+
+		// Currency symbols may be placed with spaces (e.g. nbsp) at start or at end of string
+		int start = 0;
+		if (Character.isSpaceChar(formattedClear.charAt(start)))
+			++start;
+
+		int end = formattedClear.length() - 1;
+		if (Character.isSpaceChar(formattedClear.charAt(end)))
+			--end;
+
+		// Trim spaces (String.trim() may skip most spaces)
+		formattedClear = formattedClear.substring(start, end + 1);
+
+		// Set position of cursor at end of clear string in formatted string
+		int pos = text.indexOf(formattedClear) + formattedClear.length();
+		return Math.min(pos, text.length());
+	}
+}
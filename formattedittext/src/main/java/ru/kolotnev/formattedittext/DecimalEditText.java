@@ -6,16 +6,12 @@ import android.text.Editable;
 import android.text.InputType;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.PluralsRes;
-import androidx.appcompat.widget.AppCompatEditText;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
+import java.util.Locale;
 
 /**
  * Input field for decimals.
@@ -23,7 +19,7 @@ import java.text.NumberFormat;
  * Kolotnev Pavel, 2015-2020
  */
 @SuppressWarnings("unused")
-public class DecimalEditText extends AppCompatEditText {
+public class DecimalEditText extends FormattedEditText {
 	public static final String TAG = "DecimalEditText";
 	@NonNull
 	private BigDecimal value = BigDecimal.ZERO;
@@ -31,10 +27,14 @@ public class DecimalEditText extends AppCompatEditText {
 	private BigDecimal min = BigDecimal.ZERO;
 	@NonNull
 	private BigDecimal max = BigDecimal.ZERO;
-	private String current;
 	private int decimalRounding = 3;
 	@PluralsRes
 	private int pluralLabel = 0;
+	private boolean freeFormInput = false;
+	@NonNull
+	private final DecimalInputState inputState = new DecimalInputState(true, decimalRounding);
+	@NonNull
+	private final EditTracker tracker = new EditTracker();
 	private final TextWatcher textWatcher = new TextWatcher() {
 		@Override
 		public void beforeTextChanged(CharSequence s, int start, int count, int after) {
@@ -43,17 +43,34 @@ public class DecimalEditText extends AppCompatEditText {
 
 		@Override
 		public void onTextChanged(CharSequence s, int start, int before, int count) {
-			/* do nothing */
+			tracker.onTextChanged(s, start, before, count);
 		}
 
 		@Override
 		public void afterTextChanged(@NonNull Editable s) {
-			String str = s.toString();
-			if (str.length() > 0 && str.equals(current)) {
+			// Text will be formatted when IME finishes composing
+			if (deferWhileComposing(s))
+				return;
+
+			// Nothing was changed since text was formatted
+			if (s.length() > 0 && tracker.isFormatted()) {
+				FormatMetrics.countSkippedEdit(DecimalEditText.this);
+				tracker.skipEdits();
 				return;
 			}
 
-			parseValue(str);
+			if (freeFormInput) {
+				parseEdit(s);
+			} else {
+				parseValue(s.toString());
+			}
+			recordEdit(value.toPlainString(), 0);
+			updateText();
+		}
+	};
+	private final Runnable batchUpdate = new Runnable() {
+		@Override
+		public void run() {
 			updateText();
 		}
 	};
@@ -73,9 +90,12 @@ public class DecimalEditText extends AppCompatEditText {
 				pluralLabel = a.getResourceId(at, pluralLabel);
 			} else if (at == R.styleable.DecimalEditText_rounding) {
 				decimalRounding = a.getInt(at, decimalRounding);
+			} else if (at == R.styleable.DecimalEditText_freeFormInput) {
+				freeFormInput = a.getBoolean(at, freeFormInput);
 			}
 		}
 		a.recycle();
+		inputState.setMaxFractionDigits(decimalRounding);
 
 		setInputType(getInputType()
 				| InputType.TYPE_CLASS_NUMBER
@@ -85,8 +105,24 @@ public class DecimalEditText extends AppCompatEditText {
 		setText(getText());
 	}
 
+	@Override
+	void onComposingFinished(@NonNull Editable text) {
+		textWatcher.afterTextChanged(text);
+	}
+
+	@Override
+	void restoreState(@NonNull String state, int cursor) {
+		value = new BigDecimal(state);
+		if (freeFormInput)
+			value = inputState.setValue(value);
+		updateText();
+	}
+
 	/**
 	 * Returns decimal value from entered text.
+	 * <p>
+	 * While IME is composing text value is not updated, it is stale until
+	 * composing is finished.
 	 *
 	 * @return Decimal value.
 	 */
@@ -104,6 +140,9 @@ public class DecimalEditText extends AppCompatEditText {
 	public void setValue(@NonNull BigDecimal value) {
 		this.value = value;
 		clampCurrentValue();
+		if (freeFormInput)
+			this.value = inputState.setValue(this.value);
+		resetHistory(this.value.toPlainString(), 0);
 		updateText();
 	}
 
@@ -126,7 +165,15 @@ public class DecimalEditText extends AppCompatEditText {
 		this.decimalRounding = decimalRounding;
 		if (this.decimalRounding < 0)
 			this.decimalRounding = 0;
-		parseValue(current);
+		inputState.setMaxFractionDigits(this.decimalRounding);
+		if (freeFormInput) {
+			value = inputState.getValue();
+		} else {
+			String current = tracker.getText();
+			if (current != null)
+				parseValue(current);
+		}
+		resetHistory(value.toPlainString(), 0);
 		updateText();
 	}
 
@@ -163,7 +210,37 @@ public class DecimalEditText extends AppCompatEditText {
 		this.decimalRounding = decimalRounding;
 		if (this.decimalRounding < 0)
 			this.decimalRounding = 0;
+		inputState.setMaxFractionDigits(this.decimalRounding);
+		if (freeFormInput)
+			value = inputState.getValue();
 		this.pluralLabel = pluralResource;
+		resetHistory(value.toPlainString(), 0);
+		updateText();
+	}
+
+	/**
+	 * Checks if free-form typing is enabled.
+	 *
+	 * @return True if decimal separator is typed by user, false if
+	 * typed digits are shifted into fraction part.
+	 */
+	public boolean isFreeFormInput() {
+		return freeFormInput;
+	}
+
+	/**
+	 * Sets mode of typing. In free-form mode decimal separator is typed by
+	 * user, otherwise every typed digit shifts existing digits left and
+	 * the last {@link #getDecimalRounding()} digits are fraction part.
+	 *
+	 * @param freeFormInput
+	 * 		Enable free-form typing.
+	 */
+	public void setFreeFormInput(boolean freeFormInput) {
+		this.freeFormInput = freeFormInput;
+		if (freeFormInput)
+			value = inputState.setValue(value);
+		resetHistory(value.toPlainString(), 0);
 		updateText();
 	}
 
@@ -181,24 +258,30 @@ public class DecimalEditText extends AppCompatEditText {
 	}
 
 	private void parseValue(@NonNull String str) {
-		// Remove all non numeric chars
-		String cleanString = str.replaceAll("((?<!^)[\\D]|^[^\\d+-]|([+-]$)|(^\\D+$))", "");
+		long time = FormatMetrics.begin(FormatMetrics.PHASE_PARSE);
+		// Remove all non numeric chars except leading sign
+		String cleanString = Digits.clean(str, true);
 		if (cleanString.length() > 0) {
-			// Construct decimal value as only signed integer value and
-			// move fraction point according decimalRounding value.
-			try {
-				value = new BigDecimal(cleanString)
-						.setScale(decimalRounding, BigDecimal.ROUND_FLOOR)
-						.divide(BigDecimal.valueOf(Math.pow(10, decimalRounding)), BigDecimal.ROUND_FLOOR);
-			} catch (NumberFormatException e) {
-				Log.e(TAG, "Failed to convert " + cleanString + " to decimal. Parameter " + str);
-				e.printStackTrace();
-			}
+			value = DecimalFormatter.parseDigits(cleanString, decimalRounding);
 			clampCurrentValue();
 		} else {
 			// Input field have no any digit
 			value = BigDecimal.ZERO;
 		}
+		FormatMetrics.end(this, FormatMetrics.PHASE_PARSE, time);
+	}
+
+	private void parseEdit(@NonNull Editable text) {
+		long time = FormatMetrics.begin(FormatMetrics.PHASE_PARSE);
+		inputState.setLocale(Locale.getDefault());
+		tracker.parse(text, inputState);
+
+		value = inputState.getValue();
+		BigDecimal typed = value;
+		clampCurrentValue();
+		if (value != typed)
+			value = inputState.setValue(value);
+		FormatMetrics.end(this, FormatMetrics.PHASE_PARSE, time);
 	}
 
 	private void clampCurrentValue() {
@@ -211,26 +294,43 @@ public class DecimalEditText extends AppCompatEditText {
 	}
 
 	private void updateText() {
-		DecimalFormat df = (DecimalFormat) NumberFormat.getInstance();
-		df.setMinimumFractionDigits(decimalRounding);
-		df.setMaximumFractionDigits(decimalRounding);
-		df.setRoundingMode(RoundingMode.FLOOR);
-		String formattedClear = df.format(value);
+		if (FormatBatch.defer(batchUpdate)) {
+			tracker.invalidate();
+			return;
+		}
+
+		long time = FormatMetrics.begin(FormatMetrics.PHASE_FORMAT);
+		String formattedClear = freeFormInput
+				? inputState.format(Locale.getDefault())
+				: DecimalFormatter.format(value, decimalRounding);
+		String current;
+		int start = 0;
 		if (pluralLabel == 0) {
 			current = formattedClear;
 		} else {
-			current = getResources().getQuantityString(pluralLabel, value.intValue(), formattedClear);
+			// Label may contain digits and number may be empty, so position
+			// of number is found by marker instead of searching of number
+			String label = getResources().getQuantityString(pluralLabel, value.intValue(), DecimalFormatter.NUMBER_MARKER);
+			start = DecimalFormatter.getNumberStart(label);
+			current = label.replace(DecimalFormatter.NUMBER_MARKER, formattedClear);
 		}
 		int pos;
-		if (current.contains(formattedClear)) {
-			pos = current.indexOf(formattedClear) + formattedClear.length();
+		if (start >= 0) {
+			pos = start + formattedClear.length();
+			// Only number is parsed after edit
+			tracker.setText(current, start, pos);
 		} else {
-			pos = 0;
+			pos = DecimalFormatter.getSelection(current, formattedClear);
+			tracker.setText(current, -1, -1);
 		}
+		FormatMetrics.end(this, FormatMetrics.PHASE_FORMAT, time);
 
+		time = FormatMetrics.begin(FormatMetrics.PHASE_APPLY);
 		removeTextChangedListener(textWatcher);
 		setText(current);
 		setSelection(pos);
 		addTextChangedListener(textWatcher);
+		FormatMetrics.end(this, FormatMetrics.PHASE_APPLY, time);
+		FormatMetrics.countSetText(this);
 	}
 }
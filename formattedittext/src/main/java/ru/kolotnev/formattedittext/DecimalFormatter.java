@@ -0,0 +1,140 @@
+package ru.kolotnev.formattedittext;
+
+import android.content.res.Resources;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.PluralsRes;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+
+/**
+ * Formatting and parsing of decimals exactly like in {@link DecimalEditText},
+ * but without any view. Methods may be called from any thread.
+ * <p>
+ * Kolotnev Pavel, 2015-2020
+ */
+@SuppressWarnings("unused")
+public final class DecimalFormatter {
+	/** Argument of label which marks position of number, noncharacter of Unicode. */
+	static final String NUMBER_MARKER = "\uFFFF";
+
+	private DecimalFormatter() {
+		/* no instances */
+	}
+
+	/**
+	 * Formats decimal value.
+	 *
+	 * @param value
+	 * 		Decimal value.
+	 * @param decimalRounding
+	 * 		Amount of fraction digits.
+	 *
+	 * @return Formatted decimal.
+	 */
+	@NonNull
+	public static String format(@NonNull BigDecimal value, int decimalRounding) {
+		return FormatterCache.getDecimalFormat(Locale.getDefault(), Math.max(decimalRounding, 0)).format(value);
+	}
+
+	/**
+	 * Formats decimal value with label from plural.
+	 *
+	 * @param resources
+	 * 		Resources with plural.
+	 * @param value
+	 * 		Decimal value.
+	 * @param decimalRounding
+	 * 		Amount of fraction digits.
+	 * @param pluralResource
+	 * 		Resource ID of plural strings or zero for decimal without label.
+	 *
+	 * @return Formatted decimal.
+	 */
+	@NonNull
+	public static String format(
+			@NonNull Resources resources,
+			@NonNull BigDecimal value,
+			int decimalRounding,
+			@PluralsRes int pluralResource) {
+		String formattedClear = format(value, decimalRounding);
+		if (pluralResource == 0) {
+			return formattedClear;
+		}
+		return resources.getQuantityString(pluralResource, value.intValue(), formattedClear);
+	}
+
+	/**
+	 * Parses decimal from text, every digit in text is treated as part of
+	 * signed integer value and fraction point is moved according to rounding.
+	 * Digits of all scripts are accepted.
+	 *
+	 * @param str
+	 * 		Text with digits.
+	 * @param decimalRounding
+	 * 		Amount of fraction digits.
+	 *
+	 * @return Decimal value, ZERO if text have no any digit.
+	 */
+	@NonNull
+	public static BigDecimal parse(@NonNull String str, int decimalRounding) {
+		// Remove all non numeric chars except leading sign
+		String cleanString = Digits.clean(str, true);
+		if (cleanString.length() == 0) {
+			// Text have no any digit
+			return BigDecimal.ZERO;
+		}
+		return parseDigits(cleanString, decimalRounding);
+	}
+
+	/**
+	 * Constructs decimal from signed integer value and moves fraction point
+	 * according rounding.
+	 *
+	 * @param cleanString
+	 * 		Signed integer value with ASCII digits, see {@link Digits#clean(CharSequence, boolean)}.
+	 * @param decimalRounding
+	 * 		Amount of fraction digits.
+	 *
+	 * @return Decimal value.
+	 */
+	@NonNull
+	static BigDecimal parseDigits(@NonNull String cleanString, int decimalRounding) {
+		decimalRounding = Math.max(decimalRounding, 0);
+		return new BigDecimal(cleanString)
+				.setScale(decimalRounding, BigDecimal.ROUND_FLOOR)
+				.divide(BigDecimal.valueOf(Math.pow(10, decimalRounding)), BigDecimal.ROUND_FLOOR);
+	}
+
+	/**
+	 * Finds position of number in label formatted with
+	 * {@link #NUMBER_MARKER} instead of number, so digits of label are
+	 * never taken for number.
+	 *
+	 * @param label
+	 * 		Formatted label.
+	 *
+	 * @return Position of marker or -1 if label contains no marker or
+	 * more than one.
+	 */
+	static int getNumberStart(@NonNull String label) {
+		int index = label.indexOf(NUMBER_MARKER);
+		return index >= 0 && label.indexOf(NUMBER_MARKER, index + 1) < 0 ? index : -1;
+	}
+
+	/**
+	 * Returns position of cursor in formatted text right after the number.
+	 *
+	 * @param text
+	 * 		Formatted text, may contain label.
+	 * @param formattedClear
+	 * 		Formatted number without label.
+	 *
+	 * @return Position of cursor.
+	 */
+	static int getSelection(@NonNull String text, @NonNull String formattedClear) {
+		int index = text.indexOf(formattedClear);
+		return index < 0 ? 0 : index + formattedClear.length();
+	}
+}
@@ -0,0 +1,295 @@
+package ru.kolotnev.formattedittext;
+
+import androidx.annotation.NonNull;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * State of free-form typing of decimal.
+ * <p>
+ * Typed characters are fed one by one into state machine with states
+ * for sign, integer part and fraction part after decimal separator, so
+ * typing at the end of number only updates the state instead of parsing
+ * whole text again. Characters which are not expected in current state
+ * (grouping separators, currency symbols, extra fraction digits) are skipped.
+ * <p>
+ * Kolotnev Pavel, 2015-2020
+ */
+final class DecimalInputState {
+	/** Nothing typed yet, sign is expected. */
+	static final int STATE_START = 0;
+	/** Digits of integer part are expected. */
+	static final int STATE_INTEGER = 1;
+	/** Decimal separator typed, digits of fraction part are expected. */
+	static final int STATE_FRACTION = 2;
+
+	private final boolean signed;
+	private final StringBuilder integerDigits = new StringBuilder();
+	private final StringBuilder fractionDigits = new StringBuilder();
+	private int state = STATE_START;
+	private boolean negative = false;
+	private int maxFractionDigits;
+
+	private Locale symbolsLocale = null;
+	private char decimalSeparator = '.';
+	private char minusSign = '-';
+	private char zeroDigit = '0';
+
+	/**
+	 * Creates empty state.
+	 *
+	 * @param signed
+	 * 		Can be negative value typed.
+	 * @param maxFractionDigits
+	 * 		Maximal amount of fraction digits.
+	 */
+	DecimalInputState(boolean signed, int maxFractionDigits) {
+		this.signed = signed;
+		this.maxFractionDigits = Math.max(maxFractionDigits, 0);
+	}
+
+	/**
+	 * Returns current state of state machine.
+	 *
+	 * @return One of STATE_ constants.
+	 */
+	int getState() {
+		return state;
+	}
+
+	/**
+	 * Returns amount of typed fraction digits.
+	 *
+	 * @return Amount of fraction digits.
+	 */
+	int getFractionLength() {
+		return fractionDigits.length();
+	}
+
+	/**
+	 * Sets maximal amount of fraction digits, extra typed digits are removed.
+	 *
+	 * @param maxFractionDigits
+	 * 		Maximal amount of fraction digits.
+	 */
+	void setMaxFractionDigits(int maxFractionDigits) {
+		this.maxFractionDigits = Math.max(maxFractionDigits, 0);
+		if (fractionDigits.length() > this.maxFractionDigits)
+			fractionDigits.setLength(this.maxFractionDigits);
+		if (this.maxFractionDigits == 0 && state == STATE_FRACTION)
+			state = integerDigits.length() > 0 ? STATE_INTEGER : STATE_START;
+	}
+
+	/**
+	 * Sets locale, which separators are expected in text.
+	 *
+	 * @param locale
+	 * 		Locale of text.
+	 */
+	void setLocale(@NonNull Locale locale) {
+		if (locale.equals(symbolsLocale))
+			return;
+		DecimalFormatSymbols symbols = FormatterCache.getDecimalFormat(locale, 0).getDecimalFormatSymbols();
+		symbolsLocale = locale;
+		decimalSeparator = symbols.getDecimalSeparator();
+		minusSign = symbols.getMinusSign();
+		zeroDigit = symbols.getZeroDigit();
+	}
+
+	/**
+	 * Clears state.
+	 */
+	void clear() {
+		integerDigits.setLength(0);
+		fractionDigits.setLength(0);
+		negative = false;
+		state = STATE_START;
+	}
+
+	/**
+	 * Replaces state with value.
+	 *
+	 * @param value
+	 * 		New value.
+	 *
+	 * @return Value of state: rounded to maximal amount of fraction digits,
+	 * without sign if state is unsigned.
+	 */
+	@NonNull
+	BigDecimal setValue(@NonNull BigDecimal value) {
+		clear();
+		if (value.scale() > maxFractionDigits)
+			value = value.setScale(maxFractionDigits, RoundingMode.FLOOR);
+		String plain = value.abs().toPlainString();
+		int point = plain.indexOf('.');
+		negative = signed && value.signum() < 0;
+		int integerEnd = point < 0 ? plain.length() : point;
+		// Skip leading zeros
+		int integerStart = 0;
+		while (integerStart < integerEnd && plain.charAt(integerStart) == '0') {
+			++integerStart;
+		}
+		integerDigits.append(plain, integerStart, integerEnd);
+		if (point < 0) {
+			state = STATE_INTEGER;
+		} else {
+			fractionDigits.append(plain, point + 1, plain.length());
+			state = STATE_FRACTION;
+		}
+		return getValue();
+	}
+
+	/**
+	 * Replaces state with value parsed from whole text.
+	 *
+	 * @param text
+	 * 		Formatted or typed text.
+	 */
+	void parse(@NonNull CharSequence text) {
+		parse(text, 0, text.length());
+	}
+
+	/**
+	 * Replaces state with value parsed from part of text.
+	 *
+	 * @param text
+	 * 		Formatted or typed text.
+	 * @param start
+	 * 		Start of number in text.
+	 * @param end
+	 * 		End of number in text.
+	 */
+	void parse(@NonNull CharSequence text, int start, int end) {
+		clear();
+		for (int i = start; i < end; ++i) {
+			append(text.charAt(i), false);
+		}
+	}
+
+	/**
+	 * Feeds typed character into state machine.
+	 *
+	 * @param c
+	 * 		Typed character.
+	 * @param typed
+	 * 		Is character typed by user at the end of number, then both
+	 * 		point and comma are accepted as decimal separator, because
+	 * 		many keyboards have only one of them.
+	 *
+	 * @return True if character was accepted.
+	 */
+	boolean append(char c, boolean typed) {
+		int digit = Digits.digit(c);
+		switch (state) {
+			case STATE_START:
+				if (signed && !negative && (c == minusSign || c == '-' || c == Digits.MINUS_SIGN)) {
+					negative = true;
+					return true;
+				}
+				// no break, digits and separator are expected in integer part too
+			case STATE_INTEGER:
+				if (digit >= 0) {
+					// Skip leading zeros
+					if (digit != 0 || integerDigits.length() > 0)
+						integerDigits.append((char) ('0' + digit));
+					state = STATE_INTEGER;
+					return true;
+				}
+				if (maxFractionDigits > 0 && isDecimalSeparator(c, typed)) {
+					state = STATE_FRACTION;
+					return true;
+				}
+				return false;
+			case STATE_FRACTION:
+				if (digit >= 0 && fractionDigits.length() < maxFractionDigits) {
+					fractionDigits.append((char) ('0' + digit));
+					return true;
+				}
+				return false;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes last typed character of number.
+	 */
+	void deleteLast() {
+		switch (state) {
+			case STATE_FRACTION:
+				if (fractionDigits.length() > 0) {
+					fractionDigits.setLength(fractionDigits.length() - 1);
+				} else {
+					state = STATE_INTEGER;
+				}
+				break;
+			case STATE_INTEGER:
+				if (integerDigits.length() > 0)
+					integerDigits.setLength(integerDigits.length() - 1);
+				if (integerDigits.length() == 0)
+					state = STATE_START;
+				break;
+			case STATE_START:
+				negative = false;
+				break;
+		}
+	}
+
+	/**
+	 * Returns decimal value of state.
+	 *
+	 * @return Decimal value with scale equal to amount of typed fraction digits.
+	 */
+	@NonNull
+	BigDecimal getValue() {
+		if (integerDigits.length() == 0 && fractionDigits.length() == 0)
+			return BigDecimal.ZERO;
+		StringBuilder sb = new StringBuilder(integerDigits.length() + fractionDigits.length() + 3);
+		if (negative)
+			sb.append('-');
+		if (integerDigits.length() == 0)
+			sb.append('0');
+		sb.append(integerDigits);
+		if (fractionDigits.length() > 0)
+			sb.append('.').append(fractionDigits);
+		return new BigDecimal(sb.toString());
+	}
+
+	/**
+	 * Formats state with grouping of integer part, separator and fraction
+	 * digits are shown exactly as typed.
+	 *
+	 * @param locale
+	 * 		Locale of formatting.
+	 *
+	 * @return Formatted number.
+	 */
+	@NonNull
+	String format(@NonNull Locale locale) {
+		setLocale(locale);
+		if (state == STATE_START)
+			return negative ? String.valueOf(minusSign) : "";
+
+		StringBuilder sb = new StringBuilder();
+		if (negative)
+			sb.append(minusSign);
+		if (integerDigits.length() == 0) {
+			sb.append(FormatterCache.getDecimalFormat(locale, 0).format(0));
+		} else {
+			sb.append(FormatterCache.getDecimalFormat(locale, 0).format(new BigDecimal(integerDigits.toString())));
+		}
+		if (state == STATE_FRACTION) {
+			sb.append(decimalSeparator);
+			for (int i = 0; i < fractionDigits.length(); ++i) {
+				sb.append((char) (zeroDigit + fractionDigits.charAt(i) - '0'));
+			}
+		}
+		return sb.toString();
+	}
+
+	private boolean isDecimalSeparator(char c, boolean typed) {
+		return c == decimalSeparator || (typed && (c == '.' || c == ','));
+	}
+}
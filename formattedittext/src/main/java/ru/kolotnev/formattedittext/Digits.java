@@ -0,0 +1,174 @@
+package ru.kolotnev.formattedittext;
+
+import androidx.annotation.NonNull;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Normalization of decimal digits of all scripts (Arabic-Indic, Persian,
+ * Devanagari and so on) to their values.
+ * <p>
+ * Values are looked up in table built once from zero digits of all
+ * decimal scripts of Basic Multilingual Plane, every script has digits
+ * from zero to nine in a row. ASCII digits are checked without table.
+ * <p>
+ * Kolotnev Pavel, 2015-2020
+ */
+@SuppressWarnings("unused")
+public final class Digits {
+	/** Minus sign of Unicode, used instead of hyphen-minus by some locales. */
+	static final char MINUS_SIGN = '\u2212';
+	/** Zero digits of decimal scripts (Unicode category Nd), except ASCII. */
+	private static final char[] ZERO_DIGITS = {
+			'\u0660', '\u06F0', '\u07C0', '\u0966', '\u09E6', '\u0A66', '\u0AE6', '\u0B66',
+			'\u0BE6', '\u0C66', '\u0CE6', '\u0D66', '\u0DE6', '\u0E50', '\u0ED0', '\u0F20',
+			'\u1040', '\u1090', '\u17E0', '\u1810', '\u1946', '\u19D0', '\u1A80', '\u1A90',
+			'\u1B50', '\u1BB0', '\u1C40', '\u1C50', '\uA620', '\uA8D0', '\uA900', '\uA9D0',
+			'\uA9F0', '\uAA50', '\uABF0', '\uFF10',
+	};
+	private static final int PAGE_SHIFT = 8;
+	private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+	/** Pages of table, values are stored as digit + 1, null page have no digits. */
+	private static final byte[][] PAGES = new byte[1 << (16 - PAGE_SHIFT)][];
+
+	static {
+		for (char zero : ZERO_DIGITS) {
+			for (int value = 0; value < 10; ++value) {
+				int c = zero + value;
+				byte[] page = PAGES[c >> PAGE_SHIFT];
+				if (page == null) {
+					page = new byte[1 << PAGE_SHIFT];
+					PAGES[c >> PAGE_SHIFT] = page;
+				}
+				page[c & PAGE_MASK] = (byte) (value + 1);
+			}
+		}
+	}
+
+	private Digits() {
+		/* no instances */
+	}
+
+	/**
+	 * Returns value of decimal digit of any script.
+	 *
+	 * @param c
+	 * 		Character.
+	 *
+	 * @return Value from 0 to 9 or -1 if character is not decimal digit.
+	 */
+	public static int digit(char c) {
+		if (c >= '0' && c <= '9')
+			return c - '0';
+		if (c < 0x80)
+			return -1;
+		byte[] page = PAGES[c >> PAGE_SHIFT];
+		return page == null ? -1 : page[c & PAGE_MASK] - 1;
+	}
+
+	/**
+	 * Checks that character is decimal digit of any script.
+	 *
+	 * @param c
+	 * 		Character.
+	 *
+	 * @return True for decimal digit.
+	 */
+	public static boolean isDigit(char c) {
+		return digit(c) >= 0;
+	}
+
+	/**
+	 * Replaces decimal digits of all scripts with ASCII digits.
+	 *
+	 * @param text
+	 * 		Text with digits.
+	 *
+	 * @return Text with ASCII digits, other characters are kept.
+	 */
+	@NonNull
+	public static String normalize(@NonNull CharSequence text) {
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); ++i) {
+			char c = text.charAt(i);
+			int value = digit(c);
+			sb.append(value < 0 ? c : (char) ('0' + value));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Removes all characters except digits, which are replaced with ASCII
+	 * digits, and optional sign at the start of text. Bidirectional marks
+	 * before sign are skipped, minus sign may be hyphen or Unicode minus.
+	 *
+	 * @param text
+	 * 		Text with digits.
+	 * @param signed
+	 * 		Must sign at the start of text be kept.
+	 *
+	 * @return Signed integer number or empty string if text have no any digit.
+	 */
+	@NonNull
+	static String clean(@NonNull CharSequence text, boolean signed) {
+		StringBuilder sb = new StringBuilder(text.length());
+		int start = 0;
+		if (signed) {
+			while (start < text.length() && Character.getType(text.charAt(start)) == Character.FORMAT) {
+				++start;
+			}
+			if (start < text.length()) {
+				char c = text.charAt(start);
+				if (c == '-' || c == MINUS_SIGN) {
+					sb.append('-');
+					++start;
+				} else if (c == '+') {
+					++start;
+				}
+			}
+		}
+		int signLength = sb.length();
+		for (int i = start; i < text.length(); ++i) {
+			int value = digit(text.charAt(i));
+			if (value >= 0)
+				sb.append((char) ('0' + value));
+		}
+		return sb.length() > signLength ? sb.toString() : "";
+	}
+
+	/**
+	 * Replaces ASCII digits with native digits of locale.
+	 *
+	 * @param text
+	 * 		Text with ASCII digits.
+	 * @param locale
+	 * 		Locale, which zero digit is taken from {@link DecimalFormatSymbols}.
+	 *
+	 * @return Text with native digits, other characters are kept.
+	 */
+	@NonNull
+	public static String localize(@NonNull CharSequence text, @NonNull Locale locale) {
+		return localize(text, DecimalFormatSymbols.getInstance(locale).getZeroDigit());
+	}
+
+	/**
+	 * Replaces ASCII digits with digits of script.
+	 *
+	 * @param text
+	 * 		Text with ASCII digits.
+	 * @param zeroDigit
+	 * 		Zero digit of script.
+	 *
+	 * @return Text with native digits, other characters are kept.
+	 */
+	@NonNull
+	public static String localize(@NonNull CharSequence text, char zeroDigit) {
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); ++i) {
+			char c = text.charAt(i);
+			sb.append(c >= '0' && c <= '9' ? (char) (zeroDigit + c - '0') : c);
+		}
+		return sb.toString();
+	}
+}
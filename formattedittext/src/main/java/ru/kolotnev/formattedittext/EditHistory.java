@@ -0,0 +1,250 @@
+package ru.kolotnev.formattedittext;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+
+/**
+ * Bounded history of edits for undo and redo.
+ * <p>
+ * History keeps only the current raw state of field (text without mask
+ * chars or plain decimal value) and deltas between states: replaced
+ * region with removed and inserted chars. Typing of one char costs one
+ * small entry, no matter how long is the text. When estimated size of
+ * entries exceeds limit, the oldest entries are evicted.
+ * <p>
+ * Kolotnev Pavel, 2015-2020
+ */
+final class EditHistory {
+	/** Default limit of memory used by history of one field. */
+	static final int DEFAULT_LIMIT = 16 * 1024;
+	/** Estimated size of entry without chars, includes strings. */
+	private static final int ENTRY_SIZE = 96;
+
+	private final ArrayDeque<Entry> undoEntries = new ArrayDeque<>();
+	private final ArrayDeque<Entry> redoEntries = new ArrayDeque<>();
+	private int limit;
+	private int size = 0;
+	private String state = null;
+	private int cursor = 0;
+
+	EditHistory(int limit) {
+		this.limit = Math.max(limit, 0);
+	}
+
+	/**
+	 * Returns limit of memory used by history.
+	 *
+	 * @return Limit in bytes.
+	 */
+	int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Sets limit of memory used by history, the oldest entries are evicted
+	 * if history exceeds new limit.
+	 *
+	 * @param limit
+	 * 		Limit in bytes, zero disables history.
+	 */
+	void setLimit(int limit) {
+		this.limit = Math.max(limit, 0);
+		trim();
+	}
+
+	/**
+	 * Returns estimated size of all entries.
+	 *
+	 * @return Size in bytes.
+	 */
+	int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns current state.
+	 *
+	 * @return Raw state or null if nothing was recorded.
+	 */
+	String getState() {
+		return state;
+	}
+
+	/**
+	 * Returns cursor of current state.
+	 *
+	 * @return Position of cursor in raw state.
+	 */
+	int getCursor() {
+		return cursor;
+	}
+
+	/**
+	 * Records new state of field. Redo entries are dropped if state is
+	 * changed.
+	 *
+	 * @param newState
+	 * 		Raw state of field.
+	 * @param newCursor
+	 * 		Position of cursor in raw state.
+	 *
+	 * @return True if state was changed.
+	 */
+	boolean record(@NonNull String newState, int newCursor) {
+		if (state == null) {
+			state = newState;
+			cursor = newCursor;
+			return true;
+		}
+		if (newState.equals(state)) {
+			cursor = newCursor;
+			return false;
+		}
+
+		// Find replaced region
+		int oldLength = state.length();
+		int newLength = newState.length();
+		int start = 0;
+		int max = Math.min(oldLength, newLength);
+		while (start < max && state.charAt(start) == newState.charAt(start)) {
+			++start;
+		}
+		int end = 0;
+		max -= start;
+		while (end < max && state.charAt(oldLength - end - 1) == newState.charAt(newLength - end - 1)) {
+			++end;
+		}
+
+		Entry entry = new Entry(
+				start,
+				substring(state, start, oldLength - end),
+				substring(newState, start, newLength - end),
+				cursor,
+				newCursor);
+		undoEntries.addLast(entry);
+		size += entry.size();
+		for (Entry e : redoEntries) {
+			size -= e.size();
+		}
+		redoEntries.clear();
+
+		state = newState;
+		cursor = newCursor;
+		trim();
+		return true;
+	}
+
+	/**
+	 * Checks if there is any edit to undo.
+	 *
+	 * @return True if undo is possible.
+	 */
+	boolean canUndo() {
+		return !undoEntries.isEmpty();
+	}
+
+	/**
+	 * Checks if there is any undone edit to redo.
+	 *
+	 * @return True if redo is possible.
+	 */
+	boolean canRedo() {
+		return !redoEntries.isEmpty();
+	}
+
+	/**
+	 * Reverts the last edit, restored state is available with
+	 * {@link #getState()} and {@link #getCursor()}.
+	 *
+	 * @return False if there is nothing to undo.
+	 */
+	boolean undo() {
+		Entry entry = undoEntries.pollLast();
+		if (entry == null)
+			return false;
+		state = state.substring(0, entry.start)
+				+ entry.removed
+				+ state.substring(entry.start + entry.inserted.length());
+		cursor = entry.cursorBefore;
+		redoEntries.addLast(entry);
+		return true;
+	}
+
+	/**
+	 * Applies the last undone edit again, restored state is available with
+	 * {@link #getState()} and {@link #getCursor()}.
+	 *
+	 * @return False if there is nothing to redo.
+	 */
+	boolean redo() {
+		Entry entry = redoEntries.pollLast();
+		if (entry == null)
+			return false;
+		state = state.substring(0, entry.start)
+				+ entry.inserted
+				+ state.substring(entry.start + entry.removed.length());
+		cursor = entry.cursorAfter;
+		undoEntries.addLast(entry);
+		return true;
+	}
+
+	/**
+	 * Removes all entries and starts history from new state.
+	 *
+	 * @param newState
+	 * 		Raw state of field.
+	 * @param newCursor
+	 * 		Position of cursor in raw state.
+	 */
+	void reset(@NonNull String newState, int newCursor) {
+		clear();
+		state = newState;
+		cursor = newCursor;
+	}
+
+	/**
+	 * Removes all entries, current state is kept.
+	 */
+	void clear() {
+		undoEntries.clear();
+		redoEntries.clear();
+		size = 0;
+	}
+
+	private void trim() {
+		while (size > limit && !undoEntries.isEmpty()) {
+			size -= undoEntries.pollFirst().size();
+		}
+		while (size > limit && !redoEntries.isEmpty()) {
+			size -= redoEntries.pollFirst().size();
+		}
+	}
+
+	@NonNull
+	private static String substring(@NonNull String str, int start, int end) {
+		return start == end ? "" : str.substring(start, end);
+	}
+
+	private static final class Entry {
+		final int start;
+		@NonNull
+		final String removed;
+		@NonNull
+		final String inserted;
+		final int cursorBefore;
+		final int cursorAfter;
+
+		Entry(int start, @NonNull String removed, @NonNull String inserted, int cursorBefore, int cursorAfter) {
+			this.start = start;
+			this.removed = removed;
+			this.inserted = inserted;
+			this.cursorBefore = cursorBefore;
+			this.cursorAfter = cursorAfter;
+		}
+
+		int size() {
+			return ENTRY_SIZE + 2 * (removed.length() + inserted.length());
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package ru.kolotnev.formattedittext;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Tracks edits of formatted decimal text for free-form typing.
+ * <p>
+ * Formatted text is a number with label around it (currency symbol or
+ * plural). Typing or deleting at the end of number only updates state of
+ * typing, other edits are parsed from the number only: its position in
+ * edited text is found from the last edit or by comparing with formatted
+ * text, so label never gets into the value, even if it contains digits or
+ * separators.
+ * <p>
+ * Edits which replace chars with the same chars (e.g. IME commits text
+ * again) are not counted as changes, so text is not formatted again.
+ * <p>
+ * Kolotnev Pavel, 2015-2020
+ */
+final class EditTracker {
+	@Nullable
+	private String current = null;
+	private int numberStart = -1;
+	private int numberEnd = -1;
+	private int editStart;
+	private int editBefore;
+	private int editCount;
+	private int editsSinceUpdate = 0;
+	private int textGeneration = 0;
+	private int currentGeneration = -1;
+
+	/**
+	 * Returns the last formatted text.
+	 *
+	 * @return Formatted text or null if text was not formatted yet.
+	 */
+	@Nullable
+	String getText() {
+		return current;
+	}
+
+	/**
+	 * Remembers formatted text shown in field.
+	 *
+	 * @param text
+	 * 		Formatted text.
+	 * @param numberStart
+	 * 		Start of number in text or -1 if number is not found.
+	 * @param numberEnd
+	 * 		End of number in text.
+	 */
+	void setText(@NonNull String text, int numberStart, int numberEnd) {
+		current = text;
+		this.numberStart = numberStart;
+		this.numberEnd = numberStart < 0 ? -1 : numberEnd;
+		editsSinceUpdate = 0;
+		currentGeneration = textGeneration;
+	}
+
+	/**
+	 * Checks if text was not changed since it was formatted.
+	 *
+	 * @return True if text is equal to formatted text.
+	 */
+	boolean isFormatted() {
+		return textGeneration == currentGeneration;
+	}
+
+	/**
+	 * Forgets position of number, e.g. when formatting is deferred and
+	 * text in field is not the last formatted text.
+	 */
+	void invalidate() {
+		numberStart = -1;
+		numberEnd = -1;
+	}
+
+	/**
+	 * Remembers edit of text, must be called from text watcher.
+	 *
+	 * @param s
+	 * 		Edited text.
+	 * @param start
+	 * 		Start of replaced region.
+	 * @param before
+	 * 		Length of replaced region.
+	 * @param count
+	 * 		Length of new text.
+	 */
+	void onTextChanged(@NonNull CharSequence s, int start, int before, int count) {
+		if (!isSameText(s, start, before, count))
+			++textGeneration;
+		editStart = start;
+		editBefore = before;
+		editCount = count;
+		++editsSinceUpdate;
+	}
+
+	/**
+	 * Forgets edits, which were handled without parsing.
+	 */
+	void skipEdits() {
+		editsSinceUpdate = 0;
+	}
+
+	/**
+	 * Updates state of typing from edited text.
+	 *
+	 * @param text
+	 * 		Edited text.
+	 * @param state
+	 * 		State of typing.
+	 */
+	void parse(@NonNull CharSequence text, @NonNull DecimalInputState state) {
+		if (!applyEdit(text, state)) {
+			if (current == null || numberStart < 0) {
+				state.parse(text);
+			} else {
+				parseNumber(text, state);
+			}
+		}
+		editsSinceUpdate = 0;
+	}
+
+	/**
+	 * Updates state of typing from the last edit, if it is only typing or
+	 * deleting at the end of number.
+	 *
+	 * @param text
+	 * 		Edited text.
+	 * @param state
+	 * 		State of typing.
+	 *
+	 * @return False if number must be parsed.
+	 */
+	private boolean applyEdit(@NonNull CharSequence text, @NonNull DecimalInputState state) {
+		if (editsSinceUpdate != 1 || numberEnd < 0)
+			return false;
+		if (editBefore == 0 && editStart == numberEnd) {
+			for (int i = editStart; i < editStart + editCount; ++i) {
+				state.append(text.charAt(i), true);
+			}
+			return true;
+		}
+		if (editCount == 0 && editBefore == 1 && editStart + 1 == numberEnd) {
+			state.deleteLast();
+			return true;
+		}
+		return false;
+	}
+
+	private void parseNumber(@NonNull CharSequence text, @NonNull DecimalInputState state) {
+		// Find replaced region of formatted text
+		int start;
+		int end;
+		int newEnd;
+		if (editsSinceUpdate == 1 && text.length() - editCount == current.length() - editBefore) {
+			start = editStart;
+			end = editStart + editBefore;
+			newEnd = editStart + editCount;
+		} else {
+			start = commonPrefix(text);
+			int suffix = commonSuffix(text, start);
+			end = current.length() - suffix;
+			newEnd = text.length() - suffix;
+		}
+
+		int shift = newEnd - end;
+		if (end < numberStart || (end == numberStart && start < end)) {
+			// Only label before number is edited, number is shifted
+			state.parse(text, numberStart + shift, numberEnd + shift);
+		} else if (start > numberEnd || (start == numberEnd && start < end)) {
+			// Only label after number is edited
+			state.parse(text, numberStart, numberEnd);
+		} else {
+			// Text typed at bounds of number belongs to number
+			state.parse(text, Math.min(start, numberStart), Math.max(newEnd, numberEnd + shift));
+		}
+	}
+
+	/**
+	 * Checks if edit of formatted text replaced chars with the same chars.
+	 * Text is not copied.
+	 *
+	 * @param s
+	 * 		Edited text.
+	 * @param start
+	 * 		Start of replaced region.
+	 * @param before
+	 * 		Length of replaced region.
+	 * @param count
+	 * 		Length of new text.
+	 *
+	 * @return True if text is still equal to formatted text.
+	 */
+	private boolean isSameText(@NonNull CharSequence s, int start, int before, int count) {
+		if (textGeneration != currentGeneration || before != count
+				|| current == null || start + count > current.length())
+			return false;
+		for (int i = start; i < start + count; ++i) {
+			if (s.charAt(i) != current.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private int commonPrefix(@NonNull CharSequence text) {
+		int max = Math.min(text.length(), current.length());
+		int prefix = 0;
+		while (prefix < max && text.charAt(prefix) == current.charAt(prefix)) {
+			++prefix;
+		}
+		return prefix;
+	}
+
+	private int commonSuffix(@NonNull CharSequence text, int prefix) {
+		int max = Math.min(text.length(), current.length()) - prefix;
+		int suffix = 0;
+		while (suffix < max
+				&& text.charAt(text.length() - suffix - 1) == current.charAt(current.length() - suffix - 1)) {
+			++suffix;
+		}
+		return suffix;
+	}
+}
@@ -0,0 +1,104 @@
+package ru.kolotnev.formattedittext;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+/**
+ * Batch update of input fields.
+ * <p>
+ * While batch is open, input fields only remember their new values and
+ * formatting with applying of text is deferred until the batch is closed.
+ * Then every changed field is formatted and updated only once, no matter
+ * how many times its value or text was set inside of batch:
+ * <pre>
+ * FormatBatch.begin();
+ * try {
+ *     editPrice.setValue(price);
+ *     editPhone.setText(phone);
+ *     ...
+ * } finally {
+ *     FormatBatch.end();
+ * }
+ * </pre>
+ * Batches may be nested, fields are updated when the outermost batch is closed.
+ * Must be used from main thread only.
+ * <p>
+ * Kolotnev Pavel, 2015-2020
+ */
+@SuppressWarnings("unused")
+public final class FormatBatch {
+	private static final LinkedHashSet<Runnable> pending = new LinkedHashSet<>();
+	private static int depth = 0;
+
+	private FormatBatch() {
+		/* no instances */
+	}
+
+	/**
+	 * Opens batch update of input fields.
+	 */
+	public static void begin() {
+		++depth;
+	}
+
+	/**
+	 * Closes batch update and formats all fields changed inside of batch.
+	 *
+	 * @throws IllegalStateException
+	 * 		If batch was not opened.
+	 */
+	public static void end() {
+		if (depth == 0)
+			throw new IllegalStateException("Batch update was not started");
+		if (--depth > 0)
+			return;
+
+		ArrayList<Runnable> updates = new ArrayList<>(pending);
+		pending.clear();
+		for (Runnable update : updates) {
+			update.run();
+		}
+	}
+
+	/**
+	 * Runs action inside of batch update.
+	 *
+	 * @param action
+	 * 		Action which changes input fields.
+	 */
+	public static void run(@NonNull Runnable action) {
+		begin();
+		try {
+			action.run();
+		} finally {
+			end();
+		}
+	}
+
+	/**
+	 * Checks if batch update is opened now.
+	 *
+	 * @return True if formatting of fields is deferred.
+	 */
+	public static boolean isActive() {
+		return depth > 0;
+	}
+
+	/**
+	 * Defers update of field until the batch is closed.
+	 *
+	 * @param update
+	 * 		Update of field, same instance for each call from the same field.
+	 *
+	 * @return True if update was deferred, false if there is no opened batch
+	 * and field must be updated right now.
+	 */
+	static boolean defer(@NonNull Runnable update) {
+		if (depth == 0)
+			return false;
+		pending.add(update);
+		return true;
+	}
+}
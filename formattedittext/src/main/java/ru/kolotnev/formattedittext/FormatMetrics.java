@@ -0,0 +1,296 @@
+package ru.kolotnev.formattedittext;
+
+import android.os.Build;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.os.TraceCompat;
+
+import java.util.WeakHashMap;
+
+/**
+ * Optional instrumentation of formatting in input fields.
+ * <p>
+ * Parsing, formatting and applying of text may be measured by listener
+ * and marked with {@link TraceCompat} sections for systrace. Both are disabled
+ * by default and then measuring costs only one check of a flag.
+ * Listener is notified from main thread.
+ * <p>
+ * Kolotnev Pavel, 2015-2020
+ */
+@SuppressWarnings("unused")
+public final class FormatMetrics {
+	/** Parsing of value from text. */
+	public static final int PHASE_PARSE = 0;
+	/** Formatting of value to text. */
+	public static final int PHASE_FORMAT = 1;
+	/** Applying of formatted text to input field. */
+	public static final int PHASE_APPLY = 2;
+	static final int PHASE_COUNT = 3;
+
+	private static final String[] SECTIONS = {"FormattEditText.parse", "FormattEditText.format", "FormattEditText.apply"};
+
+	@Nullable
+	private static volatile Listener listener = null;
+	private static volatile boolean tracing = false;
+	private static volatile boolean enabled = false;
+	/** Amount of trace sections opened by {@link #begin(int)}, used from main thread only. */
+	private static int openSections = 0;
+
+	private FormatMetrics() {
+		/* no instances */
+	}
+
+	/**
+	 * Sets listener of measurements.
+	 *
+	 * @param listener
+	 * 		New listener or null for disabling of measurements.
+	 */
+	public static void setListener(@Nullable Listener listener) {
+		FormatMetrics.listener = listener;
+		enabled = listener != null || tracing;
+	}
+
+	/**
+	 * Enables or disables trace sections around phases of formatting.
+	 * Tracing is available since Android 4.3.
+	 *
+	 * @param tracing
+	 * 		Must phases be marked with trace sections.
+	 */
+	public static void setTracingEnabled(boolean tracing) {
+		FormatMetrics.tracing = tracing && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+		enabled = listener != null || FormatMetrics.tracing;
+	}
+
+	/**
+	 * Starts measuring of phase.
+	 *
+	 * @param phase
+	 * 		Phase of formatting.
+	 *
+	 * @return Start time for {@link #end(View, int, long)} or zero if measuring is disabled.
+	 */
+	static long begin(int phase) {
+		if (!enabled)
+			return 0;
+		if (tracing) {
+			TraceCompat.beginSection(SECTIONS[phase]);
+			++openSections;
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Finishes measuring of phase.
+	 *
+	 * @param field
+	 * 		Measured input field.
+	 * @param phase
+	 * 		Phase of formatting.
+	 * @param startTime
+	 * 		Value returned by {@link #begin(int)}.
+	 */
+	static void end(@NonNull View field, int phase, long startTime) {
+		if (startTime == 0)
+			return;
+		long duration = System.nanoTime() - startTime;
+		// Tracing may be switched after phase was started, so only section
+		// opened by begin() is closed
+		if (openSections > 0) {
+			--openSections;
+			TraceCompat.endSection();
+		}
+		Listener l = listener;
+		if (l != null)
+			l.onPhase(field, phase, duration);
+	}
+
+	/**
+	 * Counts replacing of whole text in input field.
+	 *
+	 * @param field
+	 * 		Input field.
+	 */
+	static void countSetText(@NonNull View field) {
+		if (!enabled)
+			return;
+		Listener l = listener;
+		if (l != null)
+			l.onSetText(field);
+	}
+
+	/**
+	 * Counts edit which was skipped because it does not change formatted text.
+	 *
+	 * @param field
+	 * 		Input field.
+	 */
+	static void countSkippedEdit(@NonNull View field) {
+		if (!enabled)
+			return;
+		Listener l = listener;
+		if (l != null)
+			l.onSkippedEdit(field);
+	}
+
+	/**
+	 * Listener of measurements.
+	 */
+	public interface Listener {
+		/**
+		 * Called after each measured phase.
+		 *
+		 * @param field
+		 * 		Input field.
+		 * @param phase
+		 * 		One of {@link #PHASE_PARSE}, {@link #PHASE_FORMAT} or {@link #PHASE_APPLY}.
+		 * @param durationNanos
+		 * 		Duration of phase in nanoseconds.
+		 */
+		void onPhase(@NonNull View field, int phase, long durationNanos);
+
+		/**
+		 * Called when whole text of input field is replaced with setText()
+		 * after formatting. {@link MaskedEditText} replaces only changed
+		 * region of text, so it is counted only by {@link #PHASE_APPLY}.
+		 *
+		 * @param field
+		 * 		Input field.
+		 */
+		void onSetText(@NonNull View field);
+
+		/**
+		 * Called when edit is skipped because it does not change formatted text.
+		 *
+		 * @param field
+		 * 		Input field.
+		 */
+		void onSkippedEdit(@NonNull View field);
+	}
+
+	/**
+	 * Listener which collects counters and histograms of durations for
+	 * every input field. Must be used from main thread.
+	 */
+	public static class Recorder implements Listener {
+		private final WeakHashMap<View, FieldStats> stats = new WeakHashMap<>();
+
+		/**
+		 * Returns collected statistics of input field.
+		 *
+		 * @param field
+		 * 		Input field.
+		 *
+		 * @return Statistics or null if nothing was measured for field.
+		 */
+		@Nullable
+		public FieldStats getStats(@NonNull View field) {
+			return stats.get(field);
+		}
+
+		/**
+		 * Removes all collected statistics.
+		 */
+		public void reset() {
+			stats.clear();
+		}
+
+		@Override
+		public void onPhase(@NonNull View field, int phase, long durationNanos) {
+			obtain(field).addDuration(phase, durationNanos);
+		}
+
+		@Override
+		public void onSetText(@NonNull View field) {
+			++obtain(field).setTextCount;
+		}
+
+		@Override
+		public void onSkippedEdit(@NonNull View field) {
+			++obtain(field).skippedEditCount;
+		}
+
+		@NonNull
+		private FieldStats obtain(@NonNull View field) {
+			FieldStats s = stats.get(field);
+			if (s == null) {
+				s = new FieldStats();
+				stats.put(field, s);
+			}
+			return s;
+		}
+	}
+
+	/**
+	 * Statistics of one input field.
+	 * <p>
+	 * Durations are counted in histogram with buckets of powers of two:
+	 * bucket {@code i} contains durations from {@code 2^i} to {@code 2^(i+1)}
+	 * microseconds, first bucket also contains shorter durations and the last
+	 * one also contains longer durations.
+	 */
+	public static class FieldStats {
+		/** Amount of buckets in histogram. */
+		public static final int BUCKET_COUNT = 16;
+
+		private final long[] counts = new long[PHASE_COUNT];
+		private final long[][] histograms = new long[PHASE_COUNT][BUCKET_COUNT];
+		private long setTextCount = 0;
+		private long skippedEditCount = 0;
+
+		/**
+		 * Returns amount of measured phases, e.g. amount of format passes.
+		 *
+		 * @param phase
+		 * 		Phase of formatting.
+		 *
+		 * @return Amount of measurements.
+		 */
+		public long getCount(int phase) {
+			return counts[phase];
+		}
+
+		/**
+		 * Returns histogram of durations of phase.
+		 *
+		 * @param phase
+		 * 		Phase of formatting.
+		 *
+		 * @return Copy of histogram with {@link #BUCKET_COUNT} buckets.
+		 */
+		@NonNull
+		public long[] getHistogram(int phase) {
+			return histograms[phase].clone();
+		}
+
+		/**
+		 * Returns amount of replacing of whole text after formatting. Amount
+		 * of all applied texts, including replacing of changed region only,
+		 * is returned by {@link #getCount(int)} for {@link #PHASE_APPLY}.
+		 *
+		 * @return Amount of setText() calls.
+		 */
+		public long getSetTextCount() {
+			return setTextCount;
+		}
+
+		/**
+		 * Returns amount of edits skipped without formatting.
+		 *
+		 * @return Amount of skipped edits.
+		 */
+		public long getSkippedEditCount() {
+			return skippedEditCount;
+		}
+
+		private void addDuration(int phase, long durationNanos) {
+			++counts[phase];
+			long micros = durationNanos / 1000;
+			int bucket = micros <= 1 ? 0 : 63 - Long.numberOfLeadingZeros(micros);
+			++histograms[phase][Math.min(bucket, BUCKET_COUNT - 1)];
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package ru.kolotnev.formattedittext;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Rect;
+import android.os.Build;
+import android.text.Editable;
+import android.util.AttributeSet;
+import android.view.inputmethod.BaseInputConnection;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputConnection;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.widget.AppCompatEditText;
+
+/**
+ * Base class of formatted input fields.
+ * <p>
+ * Formatting is deferred while IME is composing text and it is done when
+ * composing is finished: IME finishes composing text or closes connection,
+ * or field loses focus.
+ * <p>
+ * Field keeps own history of undo and redo, because platform history is
+ * broken by formatting. Only edits made by user are recorded, value set
+ * by application replaces history.
+ * <p>
+ * Kolotnev Pavel, 2015-2020
+ */
+@SuppressWarnings("unused")
+public abstract class FormattedEditText extends AppCompatEditText {
+	@NonNull
+	private final EditHistory history = new EditHistory(EditHistory.DEFAULT_LIMIT);
+	private boolean settingText;
+	private boolean composingDeferred = false;
+	private final Runnable composingFinished = new Runnable() {
+		@Override
+		public void run() {
+			Editable text = getText();
+			if (composingDeferred && text != null) {
+				onComposingFinished(text);
+			}
+		}
+	};
+
+	FormattedEditText(Context context, @Nullable AttributeSet attrs) {
+		super(context, attrs);
+
+		TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.FormattedEditText);
+		final int n = a.getIndexCount();
+		for (int i = 0; i < n; ++i) {
+			int at = a.getIndex(i);
+			if (at == R.styleable.FormattedEditText_historyLimit) {
+				history.setLimit(a.getInt(at, history.getLimit()));
+			}
+		}
+		a.recycle();
+	}
+
+	@Override
+	public void setText(CharSequence text, BufferType type) {
+		// Text set by application is not an edit of user
+		boolean wasSettingText = settingText;
+		settingText = true;
+		try {
+			super.setText(text, type);
+		} finally {
+			settingText = wasSettingText;
+		}
+	}
+
+	@Override
+	public boolean onTextContextMenuItem(int id) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+			// Platform history is broken by formatting, so use own history
+			if (id == android.R.id.undo) {
+				undo();
+				return true;
+			} else if (id == android.R.id.redo) {
+				redo();
+				return true;
+			}
+		}
+		return super.onTextContextMenuItem(id);
+	}
+
+	@Override
+	public InputConnection onCreateInputConnection(EditorInfo outAttrs) {
+		InputConnection connection = super.onCreateInputConnection(outAttrs);
+		return connection == null ? null : new ComposingInputConnection(connection, composingFinished);
+	}
+
+	@Override
+	protected void onFocusChanged(boolean focused, int direction, @Nullable Rect previouslyFocusedRect) {
+		super.onFocusChanged(focused, direction, previouslyFocusedRect);
+		Editable text = getText();
+		if (!focused && composingDeferred && text != null) {
+			// Composing is over without any notification from IME, but
+			// field must not stay unformatted
+			BaseInputConnection.removeComposingSpans(text);
+			composingFinished.run();
+		}
+	}
+
+	/**
+	 * Checks if there is any edit to undo.
+	 *
+	 * @return True if undo is possible.
+	 */
+	public boolean canUndo() {
+		return history.canUndo();
+	}
+
+	/**
+	 * Checks if there is any undone edit to redo.
+	 *
+	 * @return True if redo is possible.
+	 */
+	public boolean canRedo() {
+		return history.canRedo();
+	}
+
+	/**
+	 * Reverts value and cursor to the state before the last edit.
+	 *
+	 * @return False if there is nothing to undo.
+	 */
+	public boolean undo() {
+		if (!history.undo())
+			return false;
+		restoreState(history.getState(), history.getCursor());
+		return true;
+	}
+
+	/**
+	 * Applies the last undone edit again.
+	 *
+	 * @return False if there is nothing to redo.
+	 */
+	public boolean redo() {
+		if (!history.redo())
+			return false;
+		restoreState(history.getState(), history.getCursor());
+		return true;
+	}
+
+	/**
+	 * Removes all edits from history of undo and redo.
+	 */
+	public void clearHistory() {
+		history.clear();
+	}
+
+	/**
+	 * Gets limit of memory used by history of undo and redo.
+	 *
+	 * @return Limit in bytes.
+	 */
+	public int getHistoryLimit() {
+		return history.getLimit();
+	}
+
+	/**
+	 * Sets limit of memory used by history of undo and redo, the oldest
+	 * edits are removed when history exceeds limit.
+	 *
+	 * @param limit
+	 * 		Limit in bytes, zero disables history.
+	 */
+	public void setHistoryLimit(int limit) {
+		history.setLimit(limit);
+	}
+
+	/**
+	 * Checks if text is being set by application, so edit is not made by
+	 * user.
+	 *
+	 * @return True while {@link #setText(CharSequence, BufferType)} is running.
+	 */
+	boolean isSettingText() {
+		return settingText;
+	}
+
+	/**
+	 * Records state after edit handled by text watcher. If text is set by
+	 * application, history is started again from this state.
+	 *
+	 * @param state
+	 * 		Raw state of field.
+	 * @param cursor
+	 * 		Position of cursor in raw state.
+	 */
+	void recordEdit(@NonNull String state, int cursor) {
+		if (settingText) {
+			history.reset(state, cursor);
+		} else {
+			history.record(state, cursor);
+		}
+	}
+
+	/**
+	 * Starts history again from state set by application.
+	 *
+	 * @param state
+	 * 		Raw state of field.
+	 * @param cursor
+	 * 		Position of cursor in raw state.
+	 */
+	void resetHistory(@NonNull String state, int cursor) {
+		history.reset(state, cursor);
+	}
+
+	/**
+	 * Checks if IME is composing text, then formatting must be deferred
+	 * until composing is finished.
+	 *
+	 * @param text
+	 * 		Edited text.
+	 *
+	 * @return True if formatting is deferred.
+	 */
+	boolean deferWhileComposing(@NonNull Editable text) {
+		composingDeferred = BaseInputConnection.getComposingSpanStart(text) != -1;
+		return composingDeferred;
+	}
+
+	/**
+	 * Called when IME finished composing of text and deferred formatting
+	 * must be done.
+	 *
+	 * @param text
+	 * 		Text of field.
+	 */
+	abstract void onComposingFinished(@NonNull Editable text);
+
+	/**
+	 * Shows state restored from history. State must be neither recorded nor
+	 * reset, even if formatting is deferred by {@link FormatBatch}.
+	 *
+	 * @param state
+	 * 		Raw state of field.
+	 * @param cursor
+	 * 		Position of cursor in raw state.
+	 */
+	abstract void restoreState(@NonNull String state, int cursor);
+}
@@ -0,0 +1,285 @@
+package ru.kolotnev.formattedittext;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Cache of number formatters used by input fields.
+ * <p>
+ * Creating the first formatter for a locale loads locale data and may take
+ * noticeable time, so the cache keeps one prototype per locale and currency
+ * and hands out cheap clones of it. Prototypes may be built in background
+ * with {@link #prewarm(Executor, Collection, Collection)} at application start.
+ * <p>
+ * {@link DecimalFormat} is not thread-safe, so every thread gets its own
+ * configured instances which are reused for all formatting on that thread.
+ * Instances are looked up by locale and currency without building of keys,
+ * so formatting of every keystroke doesn't allocate anything for lookup.
+ * <p>
+ * Kolotnev Pavel, 2015-2020
+ */
+@SuppressWarnings("unused")
+public final class FormatterCache {
+	private static final ConcurrentHashMap<Locale, Prototypes> prototypes = new ConcurrentHashMap<>();
+	private static final ThreadLocal<Instances> instances = new ThreadLocal<Instances>() {
+		@Override
+		protected Instances initialValue() {
+			return new Instances();
+		}
+	};
+	/** Incremented on every clearing, instances of threads are dropped when it changes. */
+	private static volatile int generation = 0;
+
+	private FormatterCache() {
+		/* no instances */
+	}
+
+	/**
+	 * Builds formatters for specified locales and currencies on executor.
+	 * Every locale is prepared for decimals and for its default currency,
+	 * and also for every currency from list.
+	 *
+	 * @param executor
+	 * 		Executor for building formatters, e.g. background thread pool.
+	 * @param locales
+	 * 		Locales which will be used by input fields.
+	 * @param currencies
+	 * 		Additional currencies which will be used by input fields, may be null.
+	 */
+	public static void prewarm(
+			@NonNull Executor executor,
+			@NonNull Collection<Locale> locales,
+			@Nullable Collection<Currency> currencies) {
+		final List<Locale> localeList = new ArrayList<>(locales);
+		final List<Currency> currencyList = currencies == null
+				? Collections.<Currency>emptyList()
+				: new ArrayList<>(currencies);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				// Build table of digits
+				Digits.isDigit('0');
+				for (Locale locale : localeList) {
+					getDecimalPrototype(locale);
+					getCurrencyPrototype(locale, getDefaultCurrency(locale), false);
+					getCurrencyPrototype(locale, getDefaultCurrency(locale), true);
+					for (Currency currency : currencyList) {
+						getCurrencyPrototype(locale, currency, false);
+						getCurrencyPrototype(locale, currency, true);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Removes all cached formatters, e.g. after changing of system locale.
+	 * Instances of other threads are dropped on their next formatting.
+	 */
+	public static synchronized void clear() {
+		prototypes.clear();
+		++generation;
+	}
+
+	/**
+	 * Returns amount of built prototypes of all locales.
+	 *
+	 * @return Amount of shared formatters which are cloned for threads.
+	 */
+	static int countPrototypes() {
+		int count = 0;
+		for (Prototypes localePrototypes : prototypes.values()) {
+			if (localePrototypes.decimal != null)
+				++count;
+			if (localePrototypes.currency != null)
+				++count;
+			count += localePrototypes.currencies.size() + localePrototypes.currenciesWithoutSymbol.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Returns default currency for locale.
+	 *
+	 * @param locale
+	 * 		Locale of currency.
+	 *
+	 * @return Currency of locale or USD if locale have no currency.
+	 */
+	@NonNull
+	static Currency getDefaultCurrency(@NonNull Locale locale) {
+		Currency currency = getCurrencyPrototype(locale, null, false).getCurrency();
+		return currency == null ? Currency.getInstance("USD") : currency;
+	}
+
+	/**
+	 * Returns decimal formatter of current thread.
+	 *
+	 * @param locale
+	 * 		Locale of formatter.
+	 * @param decimalRounding
+	 * 		Amount of fraction digits.
+	 *
+	 * @return Formatter which must not be changed by caller.
+	 */
+	@NonNull
+	static DecimalFormat getDecimalFormat(@NonNull Locale locale, int decimalRounding) {
+		LocaleInstances localeInstances = getInstances(locale);
+		DecimalFormat[] decimals = localeInstances.decimals;
+		if (decimalRounding >= decimals.length) {
+			decimals = Arrays.copyOf(decimals, decimalRounding + 1);
+			localeInstances.decimals = decimals;
+		}
+		DecimalFormat format = decimals[decimalRounding];
+		if (format == null) {
+			format = (DecimalFormat) getDecimalPrototype(locale).clone();
+			format.setMinimumFractionDigits(decimalRounding);
+			format.setMaximumFractionDigits(decimalRounding);
+			format.setRoundingMode(RoundingMode.FLOOR);
+			decimals[decimalRounding] = format;
+		}
+		return format;
+	}
+
+	/**
+	 * Returns currency formatter of current thread.
+	 *
+	 * @param locale
+	 * 		Locale of formatter.
+	 * @param currency
+	 * 		Currency of formatter.
+	 * @param withoutSymbol
+	 * 		Must currency symbol be removed from formatted text.
+	 *
+	 * @return Formatter which must not be changed by caller.
+	 */
+	@NonNull
+	static DecimalFormat getCurrencyFormat(@NonNull Locale locale, @NonNull Currency currency, boolean withoutSymbol) {
+		LocaleInstances localeInstances = getInstances(locale);
+		HashMap<Currency, DecimalFormat> map = withoutSymbol
+				? localeInstances.currenciesWithoutSymbol
+				: localeInstances.currencies;
+		DecimalFormat format = map.get(currency);
+		if (format == null) {
+			format = (DecimalFormat) getCurrencyPrototype(locale, currency, withoutSymbol).clone();
+			map.put(currency, format);
+		}
+		return format;
+	}
+
+	@NonNull
+	private static LocaleInstances getInstances(@NonNull Locale locale) {
+		Instances threadInstances = instances.get();
+		int currentGeneration = generation;
+		if (threadInstances.generation != currentGeneration) {
+			// Cache was cleared, drop formatters of this thread
+			threadInstances.locales.clear();
+			threadInstances.generation = currentGeneration;
+		}
+		LocaleInstances localeInstances = threadInstances.locales.get(locale);
+		if (localeInstances == null) {
+			localeInstances = new LocaleInstances();
+			threadInstances.locales.put(locale, localeInstances);
+		}
+		return localeInstances;
+	}
+
+	@NonNull
+	private static Prototypes getPrototypes(@NonNull Locale locale) {
+		Prototypes localePrototypes = prototypes.get(locale);
+		if (localePrototypes == null) {
+			localePrototypes = new Prototypes();
+			Prototypes existing = prototypes.putIfAbsent(locale, localePrototypes);
+			if (existing != null)
+				localePrototypes = existing;
+		}
+		return localePrototypes;
+	}
+
+	@NonNull
+	private static DecimalFormat getDecimalPrototype(@NonNull Locale locale) {
+		Prototypes localePrototypes = getPrototypes(locale);
+		DecimalFormat format = localePrototypes.decimal;
+		if (format == null) {
+			format = (DecimalFormat) NumberFormat.getInstance(locale);
+			localePrototypes.decimal = format;
+		}
+		return format;
+	}
+
+	@NonNull
+	private static DecimalFormat getCurrencyPrototype(@NonNull Locale locale, @Nullable Currency currency, boolean withoutSymbol) {
+		Prototypes localePrototypes = getPrototypes(locale);
+		if (currency == null) {
+			// Formatter with default currency of locale
+			DecimalFormat format = localePrototypes.currency;
+			if (format == null) {
+				format = (DecimalFormat) NumberFormat.getCurrencyInstance(locale);
+				localePrototypes.currency = format;
+			}
+			return format;
+		}
+
+		ConcurrentHashMap<Currency, DecimalFormat> map = withoutSymbol
+				? localePrototypes.currenciesWithoutSymbol
+				: localePrototypes.currencies;
+		DecimalFormat format = map.get(currency);
+		if (format == null) {
+			format = (DecimalFormat) NumberFormat.getCurrencyInstance(locale);
+			format.setMaximumFractionDigits(currency.getDefaultFractionDigits());
+			format.setCurrency(currency);
+			if (withoutSymbol) {
+				DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
+				symbols.setCurrencySymbol("");
+				format.setDecimalFormatSymbols(symbols);
+			}
+			DecimalFormat existing = map.putIfAbsent(currency, format);
+			if (existing != null)
+				format = existing;
+		}
+		return format;
+	}
+
+	/**
+	 * Shared prototypes of formatters for one locale.
+	 */
+	private static final class Prototypes {
+		volatile DecimalFormat decimal;
+		volatile DecimalFormat currency;
+		final ConcurrentHashMap<Currency, DecimalFormat> currencies = new ConcurrentHashMap<>();
+		final ConcurrentHashMap<Currency, DecimalFormat> currenciesWithoutSymbol = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Formatters of one thread.
+	 */
+	private static final class Instances {
+		final HashMap<Locale, LocaleInstances> locales = new HashMap<>();
+		int generation = FormatterCache.generation;
+	}
+
+	/**
+	 * Formatters of one thread for one locale.
+	 */
+	private static final class LocaleInstances {
+		/** Decimal formatters by amount of fraction digits. */
+		DecimalFormat[] decimals = new DecimalFormat[4];
+		final HashMap<Currency, DecimalFormat> currencies = new HashMap<>();
+		final HashMap<Currency, DecimalFormat> currenciesWithoutSymbol = new HashMap<>();
+	}
+}
@@ -0,0 +1,360 @@
+package ru.kolotnev.formattedittext;
+
+import androidx.annotation.NonNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compiled mask for {@link MaskedEditText}.
+ * <p>
+ * Mask string is parsed only once: escape chars are resolved and every
+ * position of formatted text is marked as literal or as expected input.
+ * Compiled masks are immutable and the recently used ones are cached, so
+ * inflating of many fields with the same mask does not parse it again.
+ * <p>
+ * Malformed mask (ending with single escape char) is accepted like before
+ * and the trailing escape char is ignored. In strict mode, which may be
+ * enabled for debug builds, it is rejected. Masks may be declared as
+ * constants, then malformed mask fails at class initialization:
+ * <pre>
+ * Mask.setStrict(BuildConfig.DEBUG);
+ * ...
+ * static final Mask PHONE = Mask.compile("(999) 999-9999");
+ * </pre>
+ * <p>
+ * Kolotnev Pavel, 2015-2020
+ */
+@SuppressWarnings("unused")
+public final class Mask {
+	static final char NUMBER_MASK = '9';
+	static final char ALPHA_MASK = 'A';
+	static final char ALPHANUMERIC_MASK = '*';
+	static final char CHARACTER_MASK = '?';
+	static final char ESCAPE_CHAR = '\\';
+
+	/** Maximal amount of cached masks, the least recently used are removed. */
+	private static final int CACHE_SIZE = 64;
+	private static final LinkedHashMap<String, Mask> cache = new LinkedHashMap<String, Mask>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Mask> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+	private static volatile boolean strict = false;
+
+	@NonNull
+	private final String source;
+	@NonNull
+	private final String chars;
+	@NonNull
+	private final boolean[] literals;
+	@NonNull
+	private final int[] inputsBefore;
+	@NonNull
+	private final int[] inputPositions;
+	private final int inputLength;
+	private final boolean numeric;
+	private final boolean valid;
+
+	private Mask(@NonNull String source) {
+		StringBuilder sb = new StringBuilder(source.length());
+		boolean[] flags = new boolean[source.length()];
+		int inputs = 0;
+		boolean isNumeric = true;
+		boolean treatNextCharAsLiteral = false;
+		for (int i = 0; i < source.length(); ++i) {
+			char c = source.charAt(i);
+			if (!treatNextCharAsLiteral && isMaskChar(c)) {
+				// Found mask character
+				isNumeric &= c == NUMBER_MASK;
+				++inputs;
+			} else if (!treatNextCharAsLiteral && c == ESCAPE_CHAR) {
+				// Next character in mask must be escaped
+				treatNextCharAsLiteral = true;
+				continue;
+			} else {
+				// Found a literal or escaped character in mask
+				flags[sb.length()] = true;
+				treatNextCharAsLiteral = false;
+			}
+			sb.append(c);
+		}
+
+		this.source = source;
+		// Trailing escape char is ignored
+		this.valid = !treatNextCharAsLiteral;
+		this.chars = sb.toString();
+		this.literals = new boolean[chars.length()];
+		System.arraycopy(flags, 0, literals, 0, literals.length);
+		this.inputsBefore = new int[literals.length + 1];
+		this.inputPositions = new int[inputs];
+		for (int i = 0; i < literals.length; ++i) {
+			inputsBefore[i + 1] = inputsBefore[i];
+			if (!literals[i])
+				inputPositions[inputsBefore[i + 1]++] = i;
+		}
+		this.inputLength = inputs;
+		this.numeric = isNumeric;
+	}
+
+	/**
+	 * Returns compiled mask.
+	 *
+	 * @param mask
+	 * 		Mask string.
+	 *
+	 * @return Compiled mask.
+	 *
+	 * @throws IllegalArgumentException
+	 * 		If strict mode is enabled and mask is malformed, e.g. ends with
+	 * 		escape char.
+	 */
+	@NonNull
+	public static Mask compile(@NonNull String mask) {
+		Mask compiled;
+		synchronized (cache) {
+			compiled = cache.get(mask);
+			if (compiled == null) {
+				compiled = new Mask(mask);
+				cache.put(mask, compiled);
+			}
+		}
+		if (strict && !compiled.valid)
+			throw new IllegalArgumentException("Mask \"" + mask + "\" ends with escape char");
+		return compiled;
+	}
+
+	/**
+	 * Checks if malformed masks are rejected.
+	 *
+	 * @return True if strict mode is enabled.
+	 */
+	public static boolean isStrict() {
+		return strict;
+	}
+
+	/**
+	 * Enables strict mode, then {@link #compile(String)} rejects malformed
+	 * masks instead of ignoring of trailing escape char. Disabled by default.
+	 *
+	 * @param strict
+	 * 		Must malformed masks be rejected.
+	 */
+	public static void setStrict(boolean strict) {
+		Mask.strict = strict;
+	}
+
+	/**
+	 * Checks if mask is well-formed.
+	 *
+	 * @return False if mask ends with single escape char, which is ignored.
+	 */
+	public boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * Returns mask string this mask was compiled from.
+	 *
+	 * @return Mask string.
+	 */
+	@NonNull
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Returns length of formatted text.
+	 *
+	 * @return Amount of literals and expected input characters.
+	 */
+	public int length() {
+		return chars.length();
+	}
+
+	/**
+	 * Returns amount of characters expected from user.
+	 *
+	 * @return Amount of non-literal positions.
+	 */
+	public int getInputLength() {
+		return inputLength;
+	}
+
+	/**
+	 * Checks that mask expects only digits from user.
+	 *
+	 * @return True if all non-literal positions are numeric.
+	 */
+	public boolean isNumeric() {
+		return numeric;
+	}
+
+	/**
+	 * Checks that position in formatted text is a literal.
+	 *
+	 * @param index
+	 * 		Position in formatted text.
+	 *
+	 * @return True for literal, false for expected input.
+	 */
+	public boolean isLiteral(int index) {
+		return literals[index];
+	}
+
+	/**
+	 * Returns literal or mask character at position.
+	 *
+	 * @param index
+	 * 		Position in formatted text.
+	 *
+	 * @return Literal (already unescaped) or mask character.
+	 */
+	public char charAt(int index) {
+		return chars.charAt(index);
+	}
+
+	/**
+	 * Checks that character is acceptable at position.
+	 *
+	 * @param index
+	 * 		Position of expected input in formatted text.
+	 * @param value
+	 * 		Character from user.
+	 *
+	 * @return True if character is acceptable.
+	 */
+	public boolean matches(int index, char value) {
+		char mask = chars.charAt(index);
+		return mask == CHARACTER_MASK
+				|| (mask == ALPHA_MASK && Character.isLetter(value))
+				|| (mask == NUMBER_MASK && Character.isDigit(value))
+				|| (mask == ALPHANUMERIC_MASK && (Character.isDigit(value) || Character.isLetter(value)));
+	}
+
+	/**
+	 * Formats text like {@link MaskedEditText} does, but without any view.
+	 * Characters which are not acceptable are skipped.
+	 *
+	 * @param value
+	 * 		Text without literals and placeholders.
+	 * @param placeholder
+	 * 		Character for positions without input.
+	 *
+	 * @return Formatted text.
+	 */
+	@NonNull
+	public String format(@NonNull CharSequence value, char placeholder) {
+		MaskedText text = new MaskedText(this, placeholder);
+		text.setRaw(value, 0);
+		text.format();
+		return text.toString();
+	}
+
+	/**
+	 * Returns characters of formatted text, literals and mask characters.
+	 *
+	 * @return String of the same length as formatted text.
+	 */
+	@NonNull
+	String getChars() {
+		return chars;
+	}
+
+	/**
+	 * Checks if character typed at position of literal is removed by
+	 * formatting, so formatted text is not changed: character is the same
+	 * literal and it is not acceptable by position which receives it.
+	 *
+	 * @param index
+	 * 		Position of literal in formatted text.
+	 * @param inputEnd
+	 * 		Position of the first placeholder in formatted text or length
+	 * 		of mask if there is no placeholder.
+	 * @param value
+	 * 		Typed character.
+	 *
+	 * @return True if typing of character doesn't change text.
+	 */
+	boolean isRedundantLiteral(int index, int inputEnd, char value) {
+		if (index >= chars.length() || !literals[index] || chars.charAt(index) != value)
+			return false;
+		int slot = getSlot(index, inputEnd);
+		return slot >= chars.length() || !matches(slot, value);
+	}
+
+	/**
+	 * Returns position in formatted text, which receives character typed
+	 * at literal. Formatting puts cursor there, if character is removed.
+	 *
+	 * @param index
+	 * 		Position of literal in formatted text.
+	 * @param inputEnd
+	 * 		Position of the first placeholder in formatted text or length
+	 * 		of mask if there is no placeholder.
+	 *
+	 * @return Position of mask character or length of mask if there is
+	 * no position for character.
+	 */
+	int getSlot(int index, int inputEnd) {
+		// Typed character goes to the first free position or to the next input
+		if (inputEnd < index)
+			return inputEnd;
+		int next = inputsBefore[index];
+		return next < inputPositions.length ? inputPositions[next] : literals.length;
+	}
+
+	/**
+	 * Returns amount of mask characters before position.
+	 *
+	 * @param index
+	 * 		Position in formatted text.
+	 *
+	 * @return Amount of positions for input before index.
+	 */
+	int countInputs(int index) {
+		return inputsBefore[index];
+	}
+
+	/**
+	 * Returns position in formatted text right after input characters,
+	 * formatting puts cursor there if it was after them.
+	 *
+	 * @param inputs
+	 * 		Amount of input characters.
+	 *
+	 * @return Position after the last of input characters or zero.
+	 */
+	int getInputEnd(int inputs) {
+		return inputs == 0 ? 0 : inputPositions[inputs - 1] + 1;
+	}
+
+	static boolean isMaskChar(char mask) {
+		switch (mask) {
+			case NUMBER_MASK:
+			case ALPHA_MASK:
+			case ALPHANUMERIC_MASK:
+			case CHARACTER_MASK:
+				return true;
+		}
+
+		return false;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Mask && source.equals(((Mask) o).source);
+	}
+
+	@Override
+	public int hashCode() {
+		return source.hashCode();
+	}
+
+	@Override
+	@NonNull
+	public String toString() {
+		return source;
+	}
+}
@@ -7,13 +7,12 @@ import android.text.InputFilter;
 import android.text.InputType;
 import android.text.Selection;
 import android.text.SpannableStringBuilder;
-import android.text.Spanned;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.appcompat.widget.AppCompatEditText;
 
 /**
  * Masked input field.
@@ -23,19 +22,69 @@ import androidx.appcompat.widget.AppCompatEditText;
  * https://github.com/reinaldoarrosi/MaskedEditText
  */
 @SuppressWarnings("unused")
-public class MaskedEditText extends AppCompatEditText {
+public class MaskedEditText extends FormattedEditText {
 	public static final String TAG = "MaskedEditText";
-	private static final char NUMBER_MASK = '9';
-	private static final char ALPHA_MASK = 'A';
-	private static final char ALPHANUMERIC_MASK = '*';
-	private static final char CHARACTER_MASK = '?';
-	private static final char ESCAPE_CHAR = '\\';
 	private static final char PLACEHOLDER = ' ';
+	private static final int HISTORY_KEEP = 0;
+	private static final int HISTORY_RECORD = 1;
+	private static final int HISTORY_RESET = 2;
 
 	@NonNull
-	private String mask;
+	private Mask mask;
 	@NonNull
-	private String placeholder;
+	private final MaskedText maskedText;
+	private boolean updating = false;
+	private int historyUpdate = HISTORY_KEEP;
+	private final TextWatcher textWatcher = new TextWatcher() {
+		@Override
+		public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+		}
+
+		@Override
+		public void onTextChanged(CharSequence s, int start, int before, int count) {
+			// Every edit of user is mirrored, so kinds of chars are known without spans
+			if (!updating)
+				maskedText.onTextChanged(s, start, before, count);
+		}
+
+		@Override
+		public void afterTextChanged(Editable s) {
+			if (updating || mask.length() == 0)
+				return;
+
+			// Text will be formatted when IME finishes composing
+			if (deferWhileComposing(s))
+				return;
+
+			maskedText.setSelection(Selection.getSelectionStart(s), Selection.getSelectionEnd(s));
+			if (maskedText.skipEdit()) {
+				applyText(s);
+				FormatMetrics.countSkippedEdit(MaskedEditText.this);
+				return;
+			}
+
+			// Formatted text is recorded even if formatting is deferred
+			if (isSettingText())
+				historyUpdate = HISTORY_RESET;
+			else if (historyUpdate == HISTORY_KEEP)
+				historyUpdate = HISTORY_RECORD;
+
+			if (FormatBatch.defer(batchUpdate))
+				return;
+
+			updateText(s);
+		}
+	};
+	private final Runnable batchUpdate = new Runnable() {
+		@Override
+		public void run() {
+			Editable text = getText();
+			if (text != null && mask.length() > 0) {
+				maskedText.setSelection(Selection.getSelectionStart(text), Selection.getSelectionEnd(text));
+				updateText(text);
+			}
+		}
+	};
 
 	public MaskedEditText(Context context) {
 		this(context, "");
@@ -78,39 +127,40 @@ public class MaskedEditText extends AppCompatEditText {
 		}
 		a.recycle();
 
-		this.mask = mask;
-		this.placeholder = String.valueOf(placeholder);
-
-		TextWatcher textWatcher = new TextWatcher() {
-			private boolean updating = false;
-
-			@Override
-			public void beforeTextChanged(CharSequence s, int start, int count, int after) {
-				/* do nothing */
-			}
+		this.mask = Mask.compile(mask);
+		warnIfMalformed(this.mask);
+		maskedText = new MaskedText(this.mask, placeholder);
+		Editable text = getText();
+		if (text != null)
+			maskedText.setText(text);
 
-			@Override
-			public void onTextChanged(CharSequence s, int start, int before, int count) {
-				/* do nothing */
-			}
+		addTextChangedListener(textWatcher);
 
-			@Override
-			public void afterTextChanged(Editable s) {
-				if (updating || MaskedEditText.this.mask.length() == 0)
-					return;
+		if (mask.length() > 0)
+			setText(getText()); // sets the text to create the mask
+	}
 
-				updating = true;
+	@Override
+	void onComposingFinished(@NonNull Editable text) {
+		textWatcher.afterTextChanged(text);
+	}
 
-				stripMaskChars(s);
-				formatMask(s);
+	@Override
+	void restoreState(@NonNull String state, int cursor) {
+		Editable value = getText();
+		if (value == null)
+			return;
 
-				updating = false;
-			}
-		};
-		addTextChangedListener(textWatcher);
+		if (mask.length() == 0) {
+			value.replace(0, value.length(), state);
+			Selection.setSelection(value, cursor);
+			return;
+		}
 
-		if (mask.length() > 0)
-			setText(getText()); // sets the text to create the mask
+		// Format raw text with cursor as typed text
+		historyUpdate = HISTORY_KEEP;
+		maskedText.setRaw(state, cursor);
+		formatText(value);
 	}
 
 	/**
@@ -120,6 +170,16 @@ public class MaskedEditText extends AppCompatEditText {
 	 */
 	@NonNull
 	public String getMask() {
+		return mask.getSource();
+	}
+
+	/**
+	 * Returns the current compiled mask.
+	 *
+	 * @return Mask for formatting text in input field.
+	 */
+	@NonNull
+	public Mask getCompiledMask() {
 		return mask;
 	}
 
@@ -128,10 +188,26 @@ public class MaskedEditText extends AppCompatEditText {
 	 *
 	 * @param mask
 	 * 		New mask.
+	 *
+	 * @throws IllegalArgumentException
+	 * 		If strict mode is enabled and mask is malformed, see
+	 * 		{@link Mask#setStrict(boolean)}.
 	 */
 	public void setMask(@NonNull final String mask) {
+		setMask(Mask.compile(mask));
+	}
+
+	/**
+	 * Sets the new compiled mask and updates the text in field.
+	 *
+	 * @param mask
+	 * 		New mask.
+	 */
+	public void setMask(@NonNull final Mask mask) {
+		warnIfMalformed(mask);
 		this.mask = mask;
-		setText(getText());
+		maskedText.setMask(mask);
+		reformat();
 	}
 
 	/**
@@ -140,7 +216,7 @@ public class MaskedEditText extends AppCompatEditText {
 	 * @return Char which currently used as placeholder.
 	 */
 	public char getPlaceholder() {
-		return placeholder.charAt(0);
+		return maskedText.getPlaceholder();
 	}
 
 	/**
@@ -150,12 +226,15 @@ public class MaskedEditText extends AppCompatEditText {
 	 * 		New placeholder char.
 	 */
 	public void setPlaceholder(char placeholder) {
-		this.placeholder = String.valueOf(placeholder);
-		setText(getText());
+		maskedText.setPlaceholder(placeholder);
+		reformat();
 	}
 
 	/**
 	 * Returns current value in input field.
+	 * <p>
+	 * While IME is composing text it is not formatted yet, so value without
+	 * mask is stale until composing is finished.
 	 *
 	 * @param removeMask
 	 * 		Must be value returned without mask.
@@ -165,123 +244,91 @@ public class MaskedEditText extends AppCompatEditText {
 	@Nullable
 	public Editable getText(boolean removeMask) {
 		if (removeMask) {
-			SpannableStringBuilder value = new SpannableStringBuilder(getText());
-			stripMaskChars(value);
-			return value;
+			return new SpannableStringBuilder(maskedText.getRaw());
 		} else {
 			return getText();
 		}
 	}
 
-	private void formatMask(@NonNull Editable value) {
-		InputFilter[] inputFilters = value.getFilters();
-		value.setFilters(new InputFilter[0]);
-
-		int indexInMask = 0;
-		int indexInText = 0;
-		int maskLength = 0;
-		int inputLength = 0;
-		boolean treatNextCharAsLiteral = false;
-		boolean maskIsNotNumeric = false;
-
-		Object selection = new Object();
-		value.setSpan(selection, Selection.getSelectionStart(value), Selection.getSelectionEnd(value), Spanned.SPAN_MARK_MARK);
-
-		while (indexInMask < mask.length()) {
-			char charInMask = mask.charAt(indexInMask);
-			if (!treatNextCharAsLiteral && isMaskChar(charInMask)) {
-				// Found mask character, try to parse text
-				maskIsNotNumeric |= charInMask != NUMBER_MASK;
-				if (indexInText >= value.length()) {
-					// Add trailing placeholders
-					value.insert(indexInText, placeholder);
-					value.setSpan(new PlaceholderSpan(), indexInText, indexInText + 1, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-					++indexInText;
-					++inputLength;
-					++maskLength;
-					++indexInMask;
-				} else if (!matchMask(charInMask, value.charAt(indexInText))) {
-					// Skip bad character in text
-					value.delete(indexInText, indexInText + 1);
-				} else {
-					// Character in text is acceptable, go to next character in mask
-					++indexInText;
-					++inputLength;
-					++maskLength;
-					++indexInMask;
-				}
-			} else if (!treatNextCharAsLiteral && charInMask == ESCAPE_CHAR) {
-				// Next character in mask must be escaped
-				treatNextCharAsLiteral = true;
-				++indexInMask;
-			} else {
-				// Found a literal or escaped character in mask
-				value.insert(indexInText, String.valueOf(charInMask));
-				value.setSpan(new LiteralSpan(), indexInText, indexInText + 1, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-				treatNextCharAsLiteral = false;
-
-				++indexInText;
-				++maskLength;
-				++indexInMask;
-			}
+	/**
+	 * Records text without mask chars to history of edits.
+	 */
+	private void recordHistory() {
+		String raw = maskedText.getRaw();
+		int cursor = maskedText.getRawCursor();
+		if (historyUpdate == HISTORY_RESET) {
+			resetHistory(raw, cursor);
+		} else {
+			recordEdit(raw, cursor);
 		}
+		historyUpdate = HISTORY_KEEP;
+	}
 
-		while (value.length() > maskLength) {
-			int pos = value.length() - 1;
-			value.delete(pos, pos + 1);
+	/**
+	 * Formats text again after mask or placeholder is changed, history
+	 * starts from formatted text.
+	 */
+	private void reformat() {
+		Editable value = getText();
+		if (value != null && mask.length() > 0) {
+			historyUpdate = HISTORY_RESET;
+			maskedText.setSelection(Selection.getSelectionStart(value), Selection.getSelectionEnd(value));
+			if (!FormatBatch.defer(batchUpdate))
+				updateText(value);
 		}
+	}
 
-		Selection.setSelection(value, value.getSpanStart(selection), value.getSpanEnd(selection));
-		value.removeSpan(selection);
-
-		value.setFilters(inputFilters);
+	private void updateText(@NonNull Editable value) {
+		long time = FormatMetrics.begin(FormatMetrics.PHASE_PARSE);
+		maskedText.parse();
+		FormatMetrics.end(this, FormatMetrics.PHASE_PARSE, time);
 
-		int newInputType = inputLength > 0
-				? (maskIsNotNumeric
-				? InputType.TYPE_CLASS_TEXT
-				: InputType.TYPE_CLASS_NUMBER)
-				: 0;
-		if (getInputType() != newInputType)
-			setInputType(newInputType);
+		formatText(value);
 	}
 
-	private void stripMaskChars(@NonNull Editable value) {
-		PlaceholderSpan[] pSpans = value.getSpans(0, value.length(), PlaceholderSpan.class);
-		LiteralSpan[] literalSpans = value.getSpans(0, value.length(), LiteralSpan.class);
+	private void formatText(@NonNull Editable value) {
+		long time = FormatMetrics.begin(FormatMetrics.PHASE_FORMAT);
+		maskedText.format();
+		FormatMetrics.end(this, FormatMetrics.PHASE_FORMAT, time);
 
-		for (PlaceholderSpan s : pSpans) {
-			value.delete(value.getSpanStart(s), value.getSpanEnd(s));
-		}
+		time = FormatMetrics.begin(FormatMetrics.PHASE_APPLY);
+		applyText(value);
+		FormatMetrics.end(this, FormatMetrics.PHASE_APPLY, time);
 
-		for (LiteralSpan s : literalSpans) {
-			value.delete(value.getSpanStart(s), value.getSpanEnd(s));
-		}
-	}
+		int newInputType = mask.getInputLength() > 0
+				? (mask.isNumeric()
+				? InputType.TYPE_CLASS_NUMBER
+				: InputType.TYPE_CLASS_TEXT)
+				: 0;
+		if (getInputType() != newInputType)
+			setInputType(newInputType);
 
-	private boolean matchMask(char mask, char value) {
-		return mask == CHARACTER_MASK
-				|| (mask == ALPHA_MASK && Character.isLetter(value))
-				|| (mask == NUMBER_MASK && Character.isDigit(value))
-				|| (mask == ALPHANUMERIC_MASK && (Character.isDigit(value) || Character.isLetter(value)));
+		if (historyUpdate != HISTORY_KEEP)
+			recordHistory();
 	}
 
-	private boolean isMaskChar(char mask) {
-		switch (mask) {
-			case NUMBER_MASK:
-			case ALPHA_MASK:
-			case ALPHANUMERIC_MASK:
-			case CHARACTER_MASK:
-				return true;
+	/**
+	 * Puts formatted text into field, only changed region is replaced.
+	 *
+	 * @param value
+	 * 		Text of field.
+	 */
+	private void applyText(@NonNull Editable value) {
+		updating = true;
+		if (maskedText.isChanged()) {
+			InputFilter[] inputFilters = value.getFilters();
+			value.setFilters(new InputFilter[0]);
+			value.replace(maskedText.getChangeStart(), maskedText.getShownChangeEnd(),
+					maskedText, maskedText.getChangeStart(), maskedText.getChangeEnd());
+			value.setFilters(inputFilters);
+			maskedText.markShown();
 		}
-
-		return false;
-	}
-
-	private static class PlaceholderSpan {
-		// this class is used just to keep track of placeholders in the text
+		Selection.setSelection(value, maskedText.getSelectionStart(), maskedText.getSelectionEnd());
+		updating = false;
 	}
 
-	private static class LiteralSpan {
-		// this class is used just to keep track of literal chars in the text
+	private static void warnIfMalformed(@NonNull Mask mask) {
+		if (!mask.isValid())
+			Log.w(TAG, "Mask \"" + mask + "\" ends with escape char, it is ignored");
 	}
 }
@@ -0,0 +1,479 @@
+package ru.kolotnev.formattedittext;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Text of masked input field without any view.
+ * <p>
+ * Every char of text has kind: input typed by user, literal or
+ * placeholder of mask. Edits of field are mirrored with
+ * {@link #replace(int, int, CharSequence, int, int)}, inserted chars are
+ * input. Parsing removes literals and placeholders, formatting puts input
+ * chars into positions of mask. Cursor moves like selection in
+ * {@link android.text.Editable} during the same edits: chars inserted at
+ * cursor stay after it.
+ * <p>
+ * Text is changed by formatting only in region between unchanged prefix
+ * and suffix of text shown in field, so field applies only this region.
+ * <p>
+ * Kolotnev Pavel, 2015-2020
+ */
+final class MaskedText implements CharSequence {
+	/** Char typed by user. */
+	static final byte INPUT = 0;
+	/** Literal char of mask. */
+	static final byte LITERAL = 1;
+	/** Placeholder of mask char without input. */
+	static final byte PLACEHOLDER = 2;
+
+	@NonNull
+	private Mask mask;
+	private char placeholder;
+	@NonNull
+	private StringBuilder text = new StringBuilder();
+	@NonNull
+	private byte[] kinds = new byte[16];
+	@NonNull
+	private StringBuilder formatted = new StringBuilder();
+	@NonNull
+	private byte[] formattedKinds = new byte[16];
+	private final StringBuilder raw = new StringBuilder();
+	private int selectionStart = 0;
+	private int selectionEnd = 0;
+	private int rawSelectionStart = 0;
+	private int rawSelectionEnd = 0;
+	private int inputLength = 0;
+	private int inputEnd = 0;
+
+	// The only edit since text was formatted
+	private int edits = 0;
+	private int editStart;
+	private int editBefore;
+	private int editCount;
+	private byte deletedKind;
+
+	// Text shown in field differs from text only in region between them
+	private int shownLength = 0;
+	private int unchangedPrefix = Integer.MAX_VALUE;
+	private int unchangedSuffix = Integer.MAX_VALUE;
+
+	MaskedText(@NonNull Mask mask, char placeholder) {
+		this.mask = mask;
+		this.placeholder = placeholder;
+	}
+
+	@NonNull
+	Mask getMask() {
+		return mask;
+	}
+
+	/**
+	 * Sets mask, text is kept until it is parsed and formatted.
+	 *
+	 * @param mask
+	 * 		New mask.
+	 */
+	void setMask(@NonNull Mask mask) {
+		this.mask = mask;
+		edits = -1;
+	}
+
+	char getPlaceholder() {
+		return placeholder;
+	}
+
+	/**
+	 * Sets placeholder, text is kept until it is parsed and formatted.
+	 *
+	 * @param placeholder
+	 * 		New placeholder char.
+	 */
+	void setPlaceholder(char placeholder) {
+		this.placeholder = placeholder;
+		edits = -1;
+	}
+
+	/**
+	 * Replaces whole text with input chars, which is shown in field.
+	 *
+	 * @param value
+	 * 		Text of field.
+	 */
+	void setText(@NonNull CharSequence value) {
+		text.setLength(0);
+		text.append(value);
+		kinds = ensureCapacity(kinds, text.length());
+		Arrays.fill(kinds, 0, text.length(), INPUT);
+		selectionStart = Math.min(selectionStart, text.length());
+		selectionEnd = Math.min(selectionEnd, text.length());
+		edits = -1;
+		markShown();
+	}
+
+	/**
+	 * Mirrors change of text reported by text watcher. If text was changed
+	 * without notification and mirrored text doesn't fit the change, whole
+	 * text is taken from field: text of the same length as mask is treated
+	 * as formatted, so literals at their positions and trailing placeholders
+	 * are not taken as input.
+	 *
+	 * @param s
+	 * 		Text of field after change.
+	 * @param start
+	 * 		Start of changed region.
+	 * @param before
+	 * 		Length of replaced region.
+	 * @param count
+	 * 		Length of new text.
+	 */
+	void onTextChanged(@NonNull CharSequence s, int start, int before, int count) {
+		if (start + before <= text.length() && text.length() - before + count == s.length()) {
+			replace(start, start + before, s, start, start + count);
+			return;
+		}
+
+		setText(s);
+		if (text.length() != mask.length())
+			return;
+		for (int i = 0; i < text.length(); ++i) {
+			if (mask.isLiteral(i) && text.charAt(i) == mask.charAt(i))
+				kinds[i] = LITERAL;
+		}
+		for (int i = text.length() - 1; i >= 0 && (kinds[i] == LITERAL || text.charAt(i) == placeholder); --i) {
+			if (kinds[i] != LITERAL)
+				kinds[i] = PLACEHOLDER;
+		}
+	}
+
+	/**
+	 * Mirrors edit of text shown in field, inserted chars are input.
+	 *
+	 * @param start
+	 * 		Start of replaced region.
+	 * @param end
+	 * 		End of replaced region.
+	 * @param value
+	 * 		Text with new chars.
+	 * @param valueStart
+	 * 		Start of new chars in value.
+	 * @param valueEnd
+	 * 		End of new chars in value.
+	 */
+	void replace(int start, int end, @NonNull CharSequence value, int valueStart, int valueEnd) {
+		deletedKind = end - start == 1 ? kinds[start] : INPUT;
+		replaceKinds(start, end, valueEnd - valueStart, INPUT);
+		text.replace(start, end, value.subSequence(valueStart, valueEnd).toString());
+		shownLength = text.length();
+		if (edits >= 0)
+			++edits;
+		editStart = start;
+		editBefore = end - start;
+		editCount = valueEnd - valueStart;
+	}
+
+	/**
+	 * Sets selection of field.
+	 *
+	 * @param start
+	 * 		Start of selection.
+	 * @param end
+	 * 		End of selection.
+	 */
+	void setSelection(int start, int end) {
+		selectionStart = Math.max(0, Math.min(start, text.length()));
+		selectionEnd = Math.max(0, Math.min(end, text.length()));
+	}
+
+	int getSelectionStart() {
+		return selectionStart;
+	}
+
+	int getSelectionEnd() {
+		return selectionEnd;
+	}
+
+	/**
+	 * Returns kind of char.
+	 *
+	 * @param index
+	 * 		Position of char.
+	 *
+	 * @return One of {@link #INPUT}, {@link #LITERAL} or {@link #PLACEHOLDER}.
+	 */
+	byte getKind(int index) {
+		return kinds[index];
+	}
+
+	/**
+	 * Returns text without mask chars.
+	 *
+	 * @return Input chars.
+	 */
+	@NonNull
+	String getRaw() {
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); ++i) {
+			if (kinds[i] == INPUT)
+				sb.append(text.charAt(i));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns position of cursor in text without mask chars.
+	 *
+	 * @return Amount of input chars before cursor.
+	 */
+	int getRawCursor() {
+		return countInputs(selectionEnd);
+	}
+
+	/**
+	 * Replaces text with input chars, they must be formatted with
+	 * {@link #format()}.
+	 *
+	 * @param value
+	 * 		Text without mask chars.
+	 * @param cursor
+	 * 		Position of cursor in value.
+	 */
+	void setRaw(@NonNull CharSequence value, int cursor) {
+		raw.setLength(0);
+		raw.append(value);
+		rawSelectionStart = rawSelectionEnd = Math.max(0, Math.min(cursor, raw.length()));
+	}
+
+	/**
+	 * Removes literals and placeholders from text, selection is kept
+	 * between the same input chars.
+	 */
+	void parse() {
+		raw.setLength(0);
+		for (int i = 0; i < text.length(); ++i) {
+			if (kinds[i] == INPUT)
+				raw.append(text.charAt(i));
+		}
+		rawSelectionStart = countInputs(selectionStart);
+		rawSelectionEnd = countInputs(selectionEnd);
+	}
+
+	/**
+	 * Formats parsed text with mask. Chars which are not acceptable by
+	 * mask are skipped.
+	 */
+	void format() {
+		int length = mask.length();
+		formatted.setLength(0);
+		formattedKinds = ensureCapacity(formattedKinds, length);
+		// Cursor moves like selection in text which is edited in place:
+		// formatted chars followed by rest of raw text
+		int start = rawSelectionStart;
+		int end = rawSelectionEnd;
+		int indexInRaw = 0;
+		inputLength = 0;
+		inputEnd = -1;
+		for (int i = 0; i < length; ++i) {
+			int index = formatted.length();
+			if (mask.isLiteral(i)) {
+				formattedKinds[index] = LITERAL;
+				formatted.append(mask.charAt(i));
+				if (index < start)
+					++start;
+				if (index < end)
+					++end;
+				continue;
+			}
+			// Skip bad characters in text
+			while (indexInRaw < raw.length() && !mask.matches(i, raw.charAt(indexInRaw))) {
+				++indexInRaw;
+				if (index < start)
+					--start;
+				if (index < end)
+					--end;
+			}
+			if (indexInRaw < raw.length()) {
+				formattedKinds[index] = INPUT;
+				formatted.append(raw.charAt(indexInRaw));
+				++indexInRaw;
+				++inputLength;
+			} else {
+				if (inputEnd < 0)
+					inputEnd = index;
+				formattedKinds[index] = PLACEHOLDER;
+				formatted.append(placeholder);
+				if (index < start)
+					++start;
+				if (index < end)
+					++end;
+			}
+		}
+		if (inputEnd < 0)
+			inputEnd = length;
+
+		// Chars which are not fit into mask are removed
+		selectionStart = Math.min(start, length);
+		selectionEnd = Math.min(end, length);
+		swapFormatted();
+		edits = 0;
+	}
+
+	/**
+	 * Reverts the only edit since text was formatted, if it can't change
+	 * result of formatting: retyping of literal or deleting of mask char.
+	 * Cursor is moved where formatting would move it.
+	 *
+	 * @return False if text must be parsed and formatted.
+	 */
+	boolean skipEdit() {
+		if (edits != 1 || selectionStart != selectionEnd)
+			return false;
+
+		int position = editStart;
+		if (editBefore == 0 && editCount == 1 && selectionEnd == position + 1
+				&& mask.isRedundantLiteral(position, inputEnd, text.charAt(position))) {
+			// Typed literal is removed, cursor goes to position which receives it
+			replaceText(position, position + 1, "", INPUT);
+			selectionStart = selectionEnd = mask.getSlot(position, inputEnd);
+			edits = 0;
+			return true;
+		}
+
+		if (editBefore == 1 && editCount == 0 && selectionEnd == position && deletedKind != INPUT) {
+			// Deleted mask char is restored, cursor goes after input chars before it
+			char c = deletedKind == LITERAL ? mask.charAt(position) : placeholder;
+			replaceText(position, position, String.valueOf(c), deletedKind);
+			selectionStart = selectionEnd = mask.getInputEnd(Math.min(mask.countInputs(position), inputLength));
+			edits = 0;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if text differs from text shown in field.
+	 *
+	 * @return True if text must be applied to field.
+	 */
+	boolean isChanged() {
+		return unchangedPrefix != Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Returns start of changed region, it is the same in text and in text
+	 * shown in field.
+	 *
+	 * @return Position of the first changed char.
+	 */
+	int getChangeStart() {
+		return unchangedPrefix;
+	}
+
+	/**
+	 * Returns end of changed region in text shown in field.
+	 *
+	 * @return End of region which must be replaced in field.
+	 */
+	int getShownChangeEnd() {
+		return shownLength - unchangedSuffix;
+	}
+
+	/**
+	 * Returns end of changed region in text.
+	 *
+	 * @return End of region which must be put into field.
+	 */
+	int getChangeEnd() {
+		return text.length() - unchangedSuffix;
+	}
+
+	/**
+	 * Remembers that text is shown in field.
+	 */
+	void markShown() {
+		shownLength = text.length();
+		unchangedPrefix = Integer.MAX_VALUE;
+		unchangedSuffix = Integer.MAX_VALUE;
+	}
+
+	@Override
+	public int length() {
+		return text.length();
+	}
+
+	@Override
+	public char charAt(int index) {
+		return text.charAt(index);
+	}
+
+	@NonNull
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return text.subSequence(start, end);
+	}
+
+	@NonNull
+	@Override
+	public String toString() {
+		return text.toString();
+	}
+
+	private int countInputs(int end) {
+		int count = 0;
+		for (int i = 0; i < end; ++i) {
+			if (kinds[i] == INPUT)
+				++count;
+		}
+		return count;
+	}
+
+	private void swapFormatted() {
+		// Only region between common prefix and suffix is changed
+		int oldLength = text.length();
+		int newLength = formatted.length();
+		int max = Math.min(oldLength, newLength);
+		int prefix = 0;
+		while (prefix < max && text.charAt(prefix) == formatted.charAt(prefix)) {
+			++prefix;
+		}
+		int suffix = 0;
+		max -= prefix;
+		while (suffix < max && text.charAt(oldLength - suffix - 1) == formatted.charAt(newLength - suffix - 1)) {
+			++suffix;
+		}
+		if (prefix < oldLength || prefix < newLength)
+			markChanged(prefix, oldLength - suffix);
+
+		StringBuilder swapText = text;
+		text = formatted;
+		formatted = swapText;
+		byte[] swapKinds = kinds;
+		kinds = formattedKinds;
+		formattedKinds = swapKinds;
+	}
+
+	private void replaceText(int start, int end, @NonNull String value, byte kind) {
+		markChanged(start, end);
+		replaceKinds(start, end, value.length(), kind);
+		text.replace(start, end, value);
+	}
+
+	private void replaceKinds(int start, int end, int count, byte kind) {
+		int length = text.length();
+		int newLength = length - (end - start) + count;
+		kinds = ensureCapacity(kinds, newLength);
+		System.arraycopy(kinds, end, kinds, start + count, length - end);
+		Arrays.fill(kinds, start, start + count, kind);
+	}
+
+	private void markChanged(int start, int end) {
+		unchangedPrefix = Math.min(unchangedPrefix, start);
+		unchangedSuffix = Math.min(unchangedSuffix, text.length() - end);
+	}
+
+	@NonNull
+	private static byte[] ensureCapacity(@NonNull byte[] array, int length) {
+		return array.length >= length ? array : Arrays.copyOf(array, Math.max(length, array.length * 2));
+	}
+}
@@ -0,0 +1,97 @@
+package ru.kolotnev.formattedittext;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CurrencyFormatterTest {
+	private static final Locale[] LOCALES = {
+			Locale.US,
+			Locale.GERMANY,
+			Locale.FRANCE,
+			Locale.UK,
+			new Locale("ru", "RU"),
+			new Locale("ar", "EG"),
+			new Locale("fa", "IR"),
+			new Locale("hi", "IN"),
+	};
+	private static final Currency[] CURRENCIES = {
+			Currency.getInstance("USD"),
+			Currency.getInstance("EUR"),
+			Currency.getInstance("RUB"),
+			Currency.getInstance("GBP"),
+	};
+	private static final String ALPHABET = "0123456789.,  $\u20ACabc\u0663\u0664\u06F5\u06F6\u0967\u0968";
+	private static final int EDITS = 20000;
+
+	@Test
+	public void parseMovesFractionPointForTwoPlaces() {
+		assertEquals(new BigDecimal("1234.56"), CurrencyFormatter.parse("$1,234.56"));
+		assertEquals(new BigDecimal("0.05"), CurrencyFormatter.parse("5"));
+		assertEquals(new BigDecimal("123.45"), CurrencyFormatter.parse("\u0661\u0662\u0663\u066B\u0664\u0665 US$"));
+		assertEquals(BigDecimal.ZERO, CurrencyFormatter.parse("$"));
+	}
+
+	@Test
+	public void formattedValueRoundTrips() {
+		Random random = new Random(7);
+		for (Locale locale : LOCALES) {
+			for (Currency currency : CURRENCIES) {
+				for (int i = 0; i < 200; ++i) {
+					BigDecimal value = BigDecimal.valueOf(Math.abs(random.nextLong() % 10000000000L), 2);
+					String text = CurrencyFormatter.format(value, locale, currency);
+					String message = locale + " " + currency + " \"" + text + "\"";
+					assertEquals(message, value, CurrencyFormatter.parse(text));
+					int selection = CurrencyFormatter.getSelection(text, value, locale, currency);
+					assertTrue(message, selection > 0 && selection <= text.length());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void randomEditsKeepValueConsistent() {
+		Random random = new Random(13);
+		runRandomEdits(random, EDITS / 10, null);
+
+		EditBudget budget = new EditBudget("CurrencyFormatter");
+		budget.start();
+		runRandomEdits(random, EDITS, budget);
+		budget.check();
+	}
+
+	private void runRandomEdits(Random random, int edits, EditBudget budget) {
+		Locale locale = LOCALES[0];
+		Currency currency = CURRENCIES[0];
+		BigDecimal value = BigDecimal.ZERO;
+		String text = CurrencyFormatter.format(value, locale, currency);
+
+		for (int i = 0; i < edits; ++i) {
+			if (random.nextInt(200) == 0) {
+				// Switch locale and currency, value is kept
+				locale = LOCALES[random.nextInt(LOCALES.length)];
+				currency = CURRENCIES[random.nextInt(CURRENCIES.length)];
+				text = CurrencyFormatter.format(value, locale, currency);
+				continue;
+			}
+
+			RandomEdit edit = RandomEdit.next(random, text.length(), ALPHABET);
+			String edited = edit.apply(text);
+			value = CurrencyFormatter.parse(edited);
+			text = CurrencyFormatter.format(value, locale, currency);
+			int selection = CurrencyFormatter.getSelection(text, value, locale, currency);
+			if (budget != null)
+				budget.countEdit();
+
+			String message = locale + " " + currency + ", edit " + edit + " of \"" + edited + "\"";
+			assertEquals(message, 0, value.compareTo(CurrencyFormatter.parse(text)));
+			assertTrue(message + ", selection " + selection, selection > 0 && selection <= text.length());
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package ru.kolotnev.formattedittext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DecimalFormatterTest {
+	private static final Locale[] LOCALES = {
+			Locale.US,
+			Locale.GERMANY,
+			Locale.FRANCE,
+			new Locale("ru", "RU"),
+			new Locale("ar", "EG"),
+			new Locale("fa", "IR"),
+			new Locale("hi", "IN"),
+	};
+	private static final String ALPHABET = "0123456789-+.,  abc\u0663\u0664\u06F5\u06F6\u0967\u0968";
+	private static final int EDITS = 20000;
+
+	private Locale defaultLocale;
+
+	@Before
+	public void saveLocale() {
+		defaultLocale = Locale.getDefault();
+	}
+
+	@After
+	public void restoreLocale() {
+		Locale.setDefault(defaultLocale);
+	}
+
+	@Test
+	public void parseShiftsFractionPoint() {
+		Locale.setDefault(Locale.US);
+		assertEquals(0, new BigDecimal("1234.567").compareTo(DecimalFormatter.parse("1,234.567", 3)));
+		assertEquals(0, new BigDecimal("-12.34").compareTo(DecimalFormatter.parse("-1234", 2)));
+		assertEquals(0, new BigDecimal("5").compareTo(DecimalFormatter.parse("+5", 0)));
+		assertEquals(BigDecimal.ZERO, DecimalFormatter.parse("-", 2));
+		assertEquals(BigDecimal.ZERO, DecimalFormatter.parse("", 2));
+	}
+
+	@Test
+	public void numberIsFoundByMarker() {
+		String marker = DecimalFormatter.NUMBER_MARKER;
+		assertEquals(7, DecimalFormatter.getNumberStart(String.format("Total: %s", marker)));
+		assertEquals(7, DecimalFormatter.getNumberStart(String.format("Box 5: %s kg", marker)));
+		assertEquals(0, DecimalFormatter.getNumberStart(String.format("%s", marker)));
+		assertEquals(-1, DecimalFormatter.getNumberStart("Total"));
+		assertEquals(-1, DecimalFormatter.getNumberStart(String.format("%1$s of %1$s", marker)));
+	}
+
+	@Test
+	public void parseAcceptsNativeDigits() {
+		assertEquals(0, new BigDecimal("-123.45").compareTo(DecimalFormatter.parse("\u061C-\u0661\u0662\u0663\u066B\u0664\u0665", 2)));
+		assertEquals(0, new BigDecimal("-12").compareTo(DecimalFormatter.parse("\u200E\u2212\u06F1\u06F2", 0)));
+		assertEquals(0, new BigDecimal("1234").compareTo(DecimalFormatter.parse("\u0967,\u0968\u0969\u096A", 0)));
+	}
+
+	@Test
+	public void formattedValueRoundTrips() {
+		Random random = new Random(17);
+		for (Locale locale : LOCALES) {
+			Locale.setDefault(locale);
+			for (int rounding = 0; rounding <= 4; ++rounding) {
+				for (int i = 0; i < 200; ++i) {
+					BigDecimal value = BigDecimal.valueOf(random.nextLong() % 10000000000L, rounding);
+					String text = DecimalFormatter.format(value, rounding);
+					assertEquals(locale + " \"" + text + "\"", value, DecimalFormatter.parse(text, rounding));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void randomEditsKeepValueConsistent() {
+		Random random = new Random(29);
+		runRandomEdits(random, EDITS / 10, null);
+
+		EditBudget budget = new EditBudget("DecimalFormatter");
+		budget.start();
+		runRandomEdits(random, EDITS, budget);
+		budget.check();
+	}
+
+	@Test
+	public void freeFormValueIsKeptByState() {
+		DecimalInputState signed = new DecimalInputState(true, 2);
+		assertEquals(new BigDecimal("1.23"), signed.setValue(new BigDecimal("1.239")));
+		assertEquals(new BigDecimal("-1.23"), signed.setValue(new BigDecimal("-1.23")));
+		DecimalInputState unsigned = new DecimalInputState(false, 2);
+		assertEquals(new BigDecimal("5.5"), unsigned.setValue(new BigDecimal("-5.5")));
+	}
+
+	@Test
+	public void freeFormTypingMatchesParsing() {
+		Random random = new Random(43);
+		DecimalInputState state = new DecimalInputState(true, 3);
+		DecimalInputState parsed = new DecimalInputState(true, 3);
+		String typing = "0123456789-.,\u0663\u06F5";
+
+		EditBudget budget = new EditBudget("DecimalInputState");
+		budget.start();
+		for (int i = 0; i < EDITS; ++i) {
+			if (random.nextInt(100) == 0) {
+				Locale locale = LOCALES[random.nextInt(LOCALES.length)];
+				int rounding = random.nextInt(5);
+				state.setLocale(locale);
+				state.setMaxFractionDigits(rounding);
+				parsed.setLocale(locale);
+				parsed.setMaxFractionDigits(rounding);
+				Locale.setDefault(locale);
+			}
+
+			// Length of typed number is kept like in real field
+			if (random.nextInt(4) == 0 || state.getValue().precision() > 18) {
+				state.deleteLast();
+			} else {
+				state.append(typing.charAt(random.nextInt(typing.length())), true);
+			}
+			String text = state.format(Locale.getDefault());
+			budget.countEdit();
+
+			// Formatted text of typed number must be parsed back to the same state
+			parsed.parse(text);
+			String message = Locale.getDefault() + " \"" + text + "\"";
+			assertEquals(message, state.getValue(), parsed.getValue());
+			assertEquals(message, text, parsed.format(Locale.getDefault()));
+		}
+		budget.check();
+	}
+
+	private void runRandomEdits(Random random, int edits, EditBudget budget) {
+		int rounding = 3;
+		BigDecimal value = BigDecimal.ZERO;
+		Locale.setDefault(LOCALES[0]);
+		String text = DecimalFormatter.format(value, rounding);
+
+		for (int i = 0; i < edits; ++i) {
+			if (random.nextInt(200) == 0) {
+				// Switch locale and rounding, value is kept
+				Locale.setDefault(LOCALES[random.nextInt(LOCALES.length)]);
+				rounding = random.nextInt(5);
+				value = value.setScale(rounding, BigDecimal.ROUND_FLOOR);
+				text = DecimalFormatter.format(value, rounding);
+				continue;
+			}
+
+			RandomEdit edit = RandomEdit.next(random, text.length(), ALPHABET);
+			String edited = edit.apply(text);
+			value = DecimalFormatter.parse(edited, rounding);
+			text = DecimalFormatter.format(value, rounding);
+			// Number inside of label like plural string does it
+			String label = "~ " + text + " kg";
+			int selection = DecimalFormatter.getSelection(label, text);
+			if (budget != null)
+				budget.countEdit();
+
+			String message = Locale.getDefault() + ", edit " + edit + " of \"" + edited + "\"";
+			assertEquals(message, 0, value.compareTo(DecimalFormatter.parse(text, rounding)));
+			assertEquals(message, text, DecimalFormatter.format(DecimalFormatter.parse(text, rounding), rounding));
+			assertEquals(message, 2 + text.length(), selection);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package ru.kolotnev.formattedittext;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+public class DigitsTest {
+	@Test
+	public void tableMatchesUnicodeDigits() {
+		for (int c = 0; c <= Character.MAX_VALUE; ++c) {
+			int expected = Character.getType(c) == Character.DECIMAL_DIGIT_NUMBER
+					? Character.digit(c, 10)
+					: -1;
+			assertEquals(Integer.toHexString(c), expected, Digits.digit((char) c));
+		}
+	}
+
+	@Test
+	public void cleanKeepsSignAndDigits() {
+		assertEquals("-123", Digits.clean("\u200E\u2212\u0661\u0662\u0663", true));
+		assertEquals("123", Digits.clean("\u200E\u2212\u0661\u0662\u0663", false));
+		assertEquals("42", Digits.clean("+4a2", true));
+		assertEquals("", Digits.clean("-", true));
+	}
+
+	@Test
+	public void localizeReplacesAsciiDigits() {
+		assertEquals("\u0967\u0968\u0969", Digits.localize("123", Locale.forLanguageTag("hi-IN-u-nu-deva")));
+		assertEquals("12a", Digits.normalize("\u0661\u0662a"));
+	}
+}
@@ -0,0 +1,72 @@
+package ru.kolotnev.formattedittext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures latency and allocation of edits in randomized tests and fails if
+ * they exceed budget. Latency is the median of durations of edits, so
+ * pauses of garbage collector or busy machine don't fail the test, while
+ * slow formatting of every edit does. Allocation is the average and it is
+ * measured only on JVMs which provide allocated bytes of thread (e.g.
+ * HotSpot).
+ */
+final class EditBudget {
+	/** Maximal median duration of one edit including formatting. */
+	static final long MAX_NANOS_PER_EDIT = 500_000;
+	/** Maximal average amount of bytes allocated by one edit. */
+	static final long MAX_BYTES_PER_EDIT = 64 * 1024;
+
+	private final String name;
+	private long[] durations = new long[32 * 1024];
+	private long lastTime;
+	private long startBytes;
+	private int edits;
+
+	EditBudget(String name) {
+		this.name = name;
+	}
+
+	void start() {
+		edits = 0;
+		startBytes = allocatedBytes();
+		lastTime = System.nanoTime();
+	}
+
+	void countEdit() {
+		long time = System.nanoTime();
+		if (edits == durations.length)
+			durations = Arrays.copyOf(durations, edits * 2);
+		durations[edits++] = time - lastTime;
+		lastTime = time;
+	}
+
+	void check() {
+		long bytes = allocatedBytes() - startBytes;
+		assertTrue(name + ": no edits measured", edits > 0);
+
+		long[] sorted = Arrays.copyOf(durations, edits);
+		Arrays.sort(sorted);
+		long median = sorted[edits / 2];
+		assertTrue(name + ": median " + median + " ns per edit exceeds budget " + MAX_NANOS_PER_EDIT,
+				median <= MAX_NANOS_PER_EDIT);
+		if (startBytes >= 0 && bytes >= 0) {
+			long bytesPerEdit = bytes / edits;
+			assertTrue(name + ": " + bytesPerEdit + " bytes per edit exceeds budget " + MAX_BYTES_PER_EDIT,
+					bytesPerEdit <= MAX_BYTES_PER_EDIT);
+		}
+	}
+
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled())
+			return -1;
+		return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,121 @@
+package ru.kolotnev.formattedittext;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EditHistoryTest {
+	@Test
+	public void undoAndRedoRestoreStateAndCursor() {
+		EditHistory history = new EditHistory(EditHistory.DEFAULT_LIMIT);
+		assertTrue(history.record("", 0));
+		assertFalse(history.canUndo());
+		history.record("7", 1);
+		history.record("79", 2);
+		history.record("7912", 4);
+		assertFalse(history.record("7912", 1));
+
+		assertTrue(history.undo());
+		assertEquals("79", history.getState());
+		assertEquals(2, history.getCursor());
+		assertTrue(history.undo());
+		assertEquals("7", history.getState());
+		assertTrue(history.canRedo());
+
+		assertTrue(history.redo());
+		assertEquals("79", history.getState());
+		assertEquals(2, history.getCursor());
+		assertTrue(history.redo());
+		assertEquals("7912", history.getState());
+		assertEquals(4, history.getCursor());
+		assertFalse(history.redo());
+	}
+
+	@Test
+	public void newEditDropsRedo() {
+		EditHistory history = new EditHistory(EditHistory.DEFAULT_LIMIT);
+		history.record("1.00", 0);
+		history.record("12.00", 0);
+		history.undo();
+		history.record("13.00", 0);
+		assertFalse(history.canRedo());
+		history.undo();
+		assertEquals("1.00", history.getState());
+		assertFalse(history.canUndo());
+	}
+
+	@Test
+	public void resetStartsHistoryFromState() {
+		EditHistory history = new EditHistory(EditHistory.DEFAULT_LIMIT);
+		history.record("", 0);
+		history.record("1", 1);
+		history.record("12", 2);
+		history.undo();
+		history.reset("500", 0);
+		assertFalse(history.canUndo());
+		assertFalse(history.canRedo());
+		assertEquals(0, history.getSize());
+		assertEquals("500", history.getState());
+
+		history.record("5001", 4);
+		assertTrue(history.undo());
+		assertEquals("500", history.getState());
+		assertFalse(history.undo());
+	}
+
+	@Test
+	public void oldestEditsAreEvicted() {
+		EditHistory history = new EditHistory(EditHistory.DEFAULT_LIMIT);
+		StringBuilder text = new StringBuilder();
+		history.record(text.toString(), 0);
+		for (int i = 0; i < 1000; ++i) {
+			text.append((char) ('a' + i % 26));
+			history.record(text.toString(), text.length());
+			assertTrue(history.getSize() <= history.getLimit());
+		}
+
+		int undone = 0;
+		while (history.undo()) {
+			++undone;
+		}
+		assertTrue(undone > 0 && undone < 1000);
+		assertEquals(1000 - undone, history.getState().length());
+
+		history.setLimit(0);
+		assertFalse(history.canUndo());
+		assertFalse(history.canRedo());
+		assertEquals(0, history.getSize());
+	}
+
+	@Test
+	public void randomEditsAreUndoneInOrder() {
+		Random random = new Random(5);
+		EditHistory history = new EditHistory(Integer.MAX_VALUE);
+		ArrayList<String> states = new ArrayList<>();
+		String text = "";
+		history.record(text, 0);
+		states.add(text);
+		for (int i = 0; i < 2000; ++i) {
+			RandomEdit edit = RandomEdit.next(random, text.length(), "0123456789ab");
+			String edited = edit.apply(text);
+			if (history.record(edited, edit.cursor()))
+				states.add(edited);
+			text = edited;
+		}
+
+		for (int i = states.size() - 2; i >= 0; --i) {
+			assertTrue(history.undo());
+			assertEquals(states.get(i), history.getState());
+		}
+		assertFalse(history.undo());
+		for (int i = 1; i < states.size(); ++i) {
+			assertTrue(history.redo());
+			assertEquals(states.get(i), history.getState());
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package ru.kolotnev.formattedittext;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EditTrackerTest {
+	private static final String[] PREFIXES = {"", "$", "Box 3: ", "1 "};
+	private static final String[] SUFFIXES = {"", " pcs.", " items in 3 boxes", " 1,5"};
+	private static final String NUMBER_CHARS = "0123456789.-";
+	private static final String LABEL_CHARS = "abc 123:.,";
+	private static final int EDITS = 20000;
+
+	@Test
+	public void labelIsNotParsed() {
+		DecimalInputState state = new DecimalInputState(true, 3);
+		state.setLocale(Locale.US);
+		EditTracker tracker = new EditTracker();
+
+		tracker.setText("12 pcs.", 0, 2);
+		assertEquals(new BigDecimal("132"), edit(tracker, state, "12 pcs.", 1, 1, "3"));
+
+		tracker.setText("12 items in 3 boxes", 0, 2);
+		assertEquals(new BigDecimal("12"), edit(tracker, state, "12 items in 3 boxes", 16, 17, ""));
+		tracker.setText("12 items in 3 boxes", 0, 2);
+		assertEquals(new BigDecimal("7"), edit(tracker, state, "12 items in 3 boxes", 0, 2, "7"));
+
+		tracker.setText("Box 3: 12", 7, 9);
+		assertEquals(new BigDecimal("12"), edit(tracker, state, "Box 3: 12", 4, 4, "3: "));
+		tracker.setText("Box 3: 12", 7, 9);
+		assertEquals(new BigDecimal("12"), edit(tracker, state, "Box 3: 12", 0, 1, ""));
+	}
+
+	@Test
+	public void typingIntoEmptyNumberAfterLabel() {
+		DecimalInputState state = new DecimalInputState(true, 3);
+		state.setLocale(Locale.US);
+		EditTracker tracker = new EditTracker();
+
+		String label = String.format("Total: %s", DecimalFormatter.NUMBER_MARKER);
+		int start = DecimalFormatter.getNumberStart(label);
+		tracker.setText(label.replace(DecimalFormatter.NUMBER_MARKER, ""), start, start);
+		assertEquals(new BigDecimal("5"), edit(tracker, state, "Total: ", 7, 7, "5"));
+	}
+
+	@Test
+	public void typingAtEndUpdatesState() {
+		DecimalInputState state = new DecimalInputState(true, 3);
+		state.setLocale(Locale.US);
+		state.setValue(new BigDecimal("12"));
+		EditTracker tracker = new EditTracker();
+
+		tracker.setText("12 pcs.", 0, 2);
+		assertEquals(new BigDecimal("12"), edit(tracker, state, "12 pcs.", 2, 2, "."));
+		assertEquals(DecimalInputState.STATE_FRACTION, state.getState());
+		assertEquals("12.", state.format(Locale.US));
+	}
+
+	@Test
+	public void randomEditsParseOnlyNumber() {
+		Random random = new Random(29);
+		DecimalInputState state = new DecimalInputState(true, 3);
+		DecimalInputState expected = new DecimalInputState(true, 3);
+		state.setLocale(Locale.US);
+		expected.setLocale(Locale.US);
+		EditTracker tracker = new EditTracker();
+		String prefix = PREFIXES[0];
+		String suffix = SUFFIXES[0];
+
+		EditBudget budget = new EditBudget("EditTracker");
+		budget.start();
+		for (int i = 0; i < EDITS; ++i) {
+			if (random.nextInt(50) == 0) {
+				prefix = PREFIXES[random.nextInt(PREFIXES.length)];
+				suffix = SUFFIXES[random.nextInt(SUFFIXES.length)];
+			}
+			String number = state.format(Locale.US);
+			String text = prefix + number + suffix;
+			int numberStart = prefix.length();
+			int numberEnd = numberStart + number.length();
+			tracker.setText(text, numberStart, numberEnd);
+
+			String edited;
+			String message;
+			if (random.nextInt(3) == 0) {
+				// Edit of label keeps value, edits at bounds of number are skipped
+				RandomEdit edit = RandomEdit.next(random, prefix.length() + suffix.length(), LABEL_CHARS);
+				if (edit.start < prefix.length() && edit.end > prefix.length())
+					continue;
+				int start = edit.start;
+				int end = edit.end;
+				if (start >= prefix.length()) {
+					start += number.length();
+					end += number.length();
+				}
+				if (start == numberEnd && end == numberEnd)
+					continue;
+				expected.parse(number);
+				edited = text.substring(0, start) + edit.insertion + text.substring(end);
+				message = "\"" + text + "\", label edit " + edit;
+				edit(tracker, state, text, start, end, edit.insertion);
+			} else {
+				RandomEdit edit = RandomEdit.next(random, number.length(), NUMBER_CHARS);
+				String editedNumber = edit.apply(number);
+				// Length of typed number is kept like in real field
+				if (editedNumber.length() > 16)
+					continue;
+				expected.parse(editedNumber);
+				edited = prefix + editedNumber + suffix;
+				message = "\"" + text + "\", number edit " + edit;
+				edit(tracker, state, text, numberStart + edit.start, numberStart + edit.end, edit.insertion);
+			}
+			budget.countEdit();
+			assertEquals(message + " \"" + edited + "\"", expected.getValue(), state.getValue());
+		}
+		budget.check();
+	}
+
+	@Test
+	public void severalEditsAreFoundByComparing() {
+		DecimalInputState state = new DecimalInputState(false, 2);
+		state.setLocale(Locale.US);
+		EditTracker tracker = new EditTracker();
+
+		tracker.setText("$1,234.5 pcs.", 1, 8);
+		// IME composes word with several edits before formatting
+		tracker.onTextChanged("$1,2934.5 pcs.", 4, 0, 1);
+		tracker.onTextChanged("$1,29934.5 pcs.", 5, 0, 1);
+		tracker.parse("$1,29934.5 pcs.", state);
+		assertEquals(new BigDecimal("129934.5"), state.getValue());
+
+		tracker.setText("$1,234.5 pcs.", 1, 8);
+		tracker.onTextChanged("$1,234.5 .", 9, 3, 0);
+		tracker.onTextChanged("1,234.5 .", 0, 1, 0);
+		tracker.parse("1,234.5 .", state);
+		assertEquals(new BigDecimal("1234.5"), state.getValue());
+	}
+
+	@Test
+	public void sameTextIsNotChange() {
+		EditTracker tracker = new EditTracker();
+		assertFalse(tracker.isFormatted());
+		tracker.setText("1,234.5", 0, 7);
+		assertTrue(tracker.isFormatted());
+
+		// IME commits the same word again
+		tracker.onTextChanged("1,234.5", 2, 3, 3);
+		assertTrue(tracker.isFormatted());
+		tracker.onTextChanged("1,294.5", 2, 3, 3);
+		assertFalse(tracker.isFormatted());
+		// Text is changed until it is formatted, even if it is changed back
+		tracker.onTextChanged("1,234.5", 2, 3, 3);
+		assertFalse(tracker.isFormatted());
+	}
+
+	private static BigDecimal edit(EditTracker tracker, DecimalInputState state, String text, int start, int end, String insertion) {
+		String edited = text.substring(0, start) + insertion + text.substring(end);
+		tracker.onTextChanged(edited, start, end - start, insertion.length());
+		tracker.parse(edited, state);
+		return state.getValue();
+	}
+}
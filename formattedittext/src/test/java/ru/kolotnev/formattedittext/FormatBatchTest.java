@@ -0,0 +1,80 @@
+package ru.kolotnev.formattedittext;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FormatBatchTest {
+	@Test
+	public void nestedBatchRunsUpdatesAtOutermostEnd() {
+		List<String> runs = new ArrayList<>();
+		Runnable first = new Update(runs, "first");
+		Runnable second = new Update(runs, "second");
+
+		assertFalse(FormatBatch.isActive());
+		FormatBatch.begin();
+		try {
+			assertTrue(FormatBatch.defer(first));
+			FormatBatch.begin();
+			try {
+				assertTrue(FormatBatch.defer(second));
+			} finally {
+				FormatBatch.end();
+			}
+			assertTrue(FormatBatch.isActive());
+			assertTrue(runs.isEmpty());
+		} finally {
+			FormatBatch.end();
+		}
+		assertFalse(FormatBatch.isActive());
+		assertEquals(Arrays.asList("first", "second"), runs);
+	}
+
+	@Test
+	public void updateIsDeferredOnce() {
+		List<String> runs = new ArrayList<>();
+		final Runnable update = new Update(runs, "update");
+
+		FormatBatch.run(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 3; ++i) {
+					assertTrue(FormatBatch.defer(update));
+				}
+			}
+		});
+		assertEquals(Arrays.asList("update"), runs);
+
+		// Without batch update is not deferred
+		assertFalse(FormatBatch.defer(update));
+		FormatBatch.begin();
+		FormatBatch.end();
+		assertEquals(1, runs.size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void endWithoutBeginThrows() {
+		FormatBatch.end();
+	}
+
+	private static final class Update implements Runnable {
+		private final List<String> runs;
+		private final String name;
+
+		Update(List<String> runs, String name) {
+			this.runs = runs;
+			this.name = name;
+		}
+
+		@Override
+		public void run() {
+			runs.add(name);
+		}
+	}
+}
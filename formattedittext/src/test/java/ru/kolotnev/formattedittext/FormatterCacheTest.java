@@ -0,0 +1,77 @@
+package ru.kolotnev.formattedittext;
+
+import org.junit.Test;
+
+import java.text.DecimalFormat;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FormatterCacheTest {
+	@Test
+	public void formattersAreReusedOnThread() {
+		assertSame(FormatterCache.getDecimalFormat(Locale.US, 2), FormatterCache.getDecimalFormat(Locale.US, 2));
+		assertNotSame(FormatterCache.getDecimalFormat(Locale.US, 2), FormatterCache.getDecimalFormat(Locale.US, 3));
+		assertEquals(12, FormatterCache.getDecimalFormat(Locale.US, 12).getMaximumFractionDigits());
+
+		Currency euro = Currency.getInstance("EUR");
+		assertSame(FormatterCache.getCurrencyFormat(Locale.FRANCE, euro, true),
+				FormatterCache.getCurrencyFormat(Locale.FRANCE, euro, true));
+		assertNotSame(FormatterCache.getCurrencyFormat(Locale.FRANCE, euro, true),
+				FormatterCache.getCurrencyFormat(Locale.FRANCE, euro, false));
+	}
+
+	@Test
+	public void clearDropsFormattersOfOtherThreads() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Callable<DecimalFormat> task = new Callable<DecimalFormat>() {
+				@Override
+				public DecimalFormat call() {
+					return FormatterCache.getDecimalFormat(Locale.GERMANY, 2);
+				}
+			};
+			DecimalFormat first = executor.submit(task).get();
+			assertSame(first, executor.submit(task).get());
+
+			FormatterCache.clear();
+			assertNotSame(first, executor.submit(task).get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void prewarmBuildsPrototypes() throws Exception {
+		Locale locale = Locale.JAPAN;
+		Currency yen = Currency.getInstance("JPY");
+		Currency euro = Currency.getInstance("EUR");
+		FormatterCache.clear();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			FormatterCache.prewarm(executor, Collections.singleton(locale), Collections.singleton(euro));
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		// Decimal, default currency and both kinds of JPY and EUR
+		assertEquals(6, FormatterCache.countPrototypes());
+
+		FormatterCache.getDecimalFormat(locale, 2);
+		FormatterCache.getCurrencyFormat(locale, yen, false);
+		FormatterCache.getCurrencyFormat(locale, yen, true);
+		FormatterCache.getCurrencyFormat(locale, euro, false);
+		FormatterCache.getCurrencyFormat(locale, euro, true);
+		assertEquals(yen, FormatterCache.getDefaultCurrency(locale));
+		assertEquals(6, FormatterCache.countPrototypes());
+	}
+}
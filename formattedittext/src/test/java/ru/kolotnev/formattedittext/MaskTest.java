@@ -0,0 +1,431 @@
+package ru.kolotnev.formattedittext;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MaskTest {
+	private static final String[] MASKS = {
+			"+90 (99) 99-9A?*",
+			"(999) 999-9999",
+			"\\9(999) 999-9999",
+			"\\\\(999) 999-9999",
+			"\\\\\\9(999) 999-9999",
+			"$999,999,999.99",
+			"(A)?*99A-9++*??",
+			"AAA-***",
+			"9999 9999 9999 9999",
+			"",
+	};
+	private static final char[] PLACEHOLDERS = {' ', '_', '#', '9'};
+	private static final String ALPHABET = "0123456789abcXYZ-()+ _?*\\#$.,\u0663\u06F5\u00E9";
+	private static final int EDITS = 20000;
+
+	@Test
+	public void compileResolvesEscapes() {
+		Mask mask = Mask.compile("\\9(99)\\\\");
+		assertEquals("9(99)\\", mask.getChars());
+		assertEquals(6, mask.length());
+		assertEquals(2, mask.getInputLength());
+		assertTrue(mask.isLiteral(0));
+		assertTrue(mask.isLiteral(1));
+		assertFalse(mask.isLiteral(2));
+		assertFalse(mask.isLiteral(3));
+		assertTrue(mask.isLiteral(5));
+		assertTrue(mask.isNumeric());
+		assertFalse(Mask.compile("99A").isNumeric());
+	}
+
+	@Test
+	public void compileCachesMasks() {
+		assertSame(Mask.compile("(999) 999-9999"), Mask.compile("(999) 999-9999"));
+	}
+
+	@Test
+	public void cacheKeepsOnlyRecentMasks() {
+		Mask first = Mask.compile("first 999");
+		for (int i = 0; i < 100; ++i) {
+			Mask.compile("9-" + i);
+		}
+		assertNotSame(first, Mask.compile("first 999"));
+	}
+
+	@Test
+	public void compileIgnoresTrailingEscape() {
+		Mask mask = Mask.compile("999\\");
+		assertFalse(mask.isValid());
+		assertEquals("999", mask.getChars());
+		assertTrue(Mask.compile("999\\\\").isValid());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void strictCompileRejectsTrailingEscape() {
+		Mask.setStrict(true);
+		try {
+			Mask.compile("999\\");
+		} finally {
+			Mask.setStrict(false);
+		}
+	}
+
+	@Test
+	public void formatSkipsBadCharacters() {
+		Mask mask = Mask.compile("+9 (999) 999-99-99");
+		assertEquals("+7 (912) 345-67-89", mask.format("79123456789", '_'));
+		assertEquals("+7 (9__) ___-__-__", mask.format("7a9", '_'));
+		assertEquals("+7 (912) 345-67-89", mask.format("7912345678900", '_'));
+	}
+
+	@Test
+	public void randomEditsConformToMask() {
+		Random random = new Random(31);
+		runRandomEdits(random, EDITS / 10, null);
+
+		EditBudget budget = new EditBudget("Mask");
+		budget.start();
+		runRandomEdits(random, EDITS, budget);
+		budget.check();
+	}
+
+	@Test
+	public void redundantLiteralKeepsText() {
+		Random random = new Random(37);
+		StringBuilder flags = new StringBuilder();
+		int redundant = 0;
+		for (int i = 0; i < 2000; ++i) {
+			Mask mask = Mask.compile(MASKS[random.nextInt(MASKS.length)]);
+			RandomEdit fill = RandomEdit.next(random, 0, ALPHABET);
+			String text = reference(mask.getSource(), fill.apply(""), '_', flags, new int[1]);
+			int inputEnd = flags.indexOf("p");
+			if (inputEnd < 0)
+				inputEnd = text.length();
+
+			for (int p = 0; p < text.length(); ++p) {
+				if (!mask.isRedundantLiteral(p, inputEnd, mask.charAt(p)))
+					continue;
+				++redundant;
+				String edited = text.substring(0, p) + mask.charAt(p) + text.substring(p);
+				StringBuilder editedFlags = new StringBuilder(flags).insert(p, 'u');
+				String message = "mask \"" + mask + "\", literal at " + p + " of \"" + text + "\"";
+				assertEquals(message, text, mask.format(strip(edited, editedFlags), '_'));
+			}
+		}
+		assertTrue(redundant > 0);
+		assertFalse(Mask.compile("(999)").isRedundantLiteral(1, 1, '9'));
+		assertFalse(Mask.compile("1-999").isRedundantLiteral(0, 2, '1'));
+		assertTrue(Mask.compile("1-999").isRedundantLiteral(1, 2, '-'));
+	}
+
+	@Test
+	public void skippedEditMovesCursorLikeFormatting() {
+		Random random = new Random(41);
+		StringBuilder flags = new StringBuilder();
+		int skipped = 0;
+		for (int i = 0; i < 2000; ++i) {
+			Mask mask = Mask.compile(MASKS[random.nextInt(MASKS.length)]);
+			String raw = RandomEdit.next(random, 0, ALPHABET).apply("");
+			String text = reference(mask.getSource(), raw, '_', flags, new int[1]);
+			int inputEnd = flags.indexOf("p");
+			if (inputEnd < 0)
+				inputEnd = text.length();
+
+			for (int p = 0; p < text.length(); ++p) {
+				String message = "mask \"" + mask + "\", position " + p + " of \"" + text + "\"";
+				if (flags.charAt(p) != 'u') {
+					// Deleted mask char is restored
+					++skipped;
+					String edited = text.substring(0, p) + text.substring(p + 1);
+					StringBuilder editedFlags = new StringBuilder(flags).deleteCharAt(p);
+					int[] cursor = {p};
+					StringBuilder formattedFlags = new StringBuilder();
+					String expected = format(mask, edited, editedFlags, formattedFlags, cursor);
+
+					MaskedText maskedText = formatted(mask, raw);
+					maskedText.replace(p, p + 1, "", 0, 0);
+					maskedText.setSelection(p, p);
+					assertTrue(message, maskedText.skipEdit());
+					assertText(message, maskedText, expected, formattedFlags, cursor[0]);
+				}
+				if (mask.isRedundantLiteral(p, inputEnd, mask.charAt(p))) {
+					// Typed literal is removed
+					++skipped;
+					String typed = String.valueOf(mask.charAt(p));
+					String edited = text.substring(0, p) + typed + text.substring(p);
+					StringBuilder editedFlags = new StringBuilder(flags).insert(p, 'u');
+					int[] cursor = {p + 1};
+					StringBuilder formattedFlags = new StringBuilder();
+					String expected = format(mask, edited, editedFlags, formattedFlags, cursor);
+
+					MaskedText maskedText = formatted(mask, raw);
+					maskedText.replace(p, p, typed, 0, 1);
+					maskedText.setSelection(p + 1, p + 1);
+					assertTrue(message, maskedText.skipEdit());
+					assertText(message, maskedText, expected, formattedFlags, cursor[0]);
+				}
+			}
+		}
+		assertTrue(skipped > 0);
+	}
+
+	/**
+	 * Formats edited text like MaskedEditText: mask chars are removed with
+	 * cursor, then text is formatted.
+	 */
+	private static String format(Mask mask, String edited, CharSequence editedFlags, StringBuilder flags, int[] cursor) {
+		for (int j = edited.length() - 1; j >= 0; --j) {
+			if (editedFlags.charAt(j) != 'u' && j < cursor[0])
+				--cursor[0];
+		}
+		return reference(mask.getSource(), strip(edited, editedFlags), '_', flags, cursor);
+	}
+
+	private static MaskedText formatted(Mask mask, String raw) {
+		MaskedText maskedText = new MaskedText(mask, '_');
+		maskedText.setRaw(raw, 0);
+		maskedText.format();
+		maskedText.markShown();
+		return maskedText;
+	}
+
+	/**
+	 * Edits text in field and text which mirrors it, then handles edit like
+	 * MaskedEditText and puts changed region of text into field.
+	 *
+	 * @param maskedText
+	 * 		Text mirroring field.
+	 * @param shown
+	 * 		Text of field.
+	 * @param edit
+	 * 		Edit made by user.
+	 * @param canSkip
+	 * 		Can edit be skipped without formatting.
+	 */
+	private static void edit(MaskedText maskedText, StringBuilder shown, RandomEdit edit, boolean canSkip) {
+		shown.replace(edit.start, edit.end, edit.insertion);
+		maskedText.replace(edit.start, edit.end, edit.insertion, 0, edit.insertion.length());
+		maskedText.setSelection(edit.cursor(), edit.cursor());
+		if (!canSkip || !maskedText.skipEdit()) {
+			maskedText.parse();
+			maskedText.format();
+		}
+		show(maskedText, shown);
+	}
+
+	private static void show(MaskedText maskedText, StringBuilder shown) {
+		if (maskedText.isChanged()) {
+			shown.replace(maskedText.getChangeStart(), maskedText.getShownChangeEnd(),
+					maskedText.subSequence(maskedText.getChangeStart(), maskedText.getChangeEnd()).toString());
+			maskedText.markShown();
+		}
+	}
+
+	private void runRandomEdits(Random random, int edits, EditBudget budget) {
+		Mask mask = Mask.compile(MASKS[0]);
+		char placeholder = PLACEHOLDERS[0];
+		StringBuilder flags = new StringBuilder();
+		String text = reference(mask.getSource(), "", placeholder, flags, new int[1]);
+		// Edits are skipped when possible in the first text, the second one is always formatted
+		MaskedText skipping = new MaskedText(mask, placeholder);
+		MaskedText formatting = new MaskedText(mask, placeholder);
+		StringBuilder skippingShown = new StringBuilder();
+		StringBuilder formattingShown = new StringBuilder();
+		for (MaskedText maskedText : new MaskedText[] {skipping, formatting}) {
+			maskedText.parse();
+			maskedText.format();
+		}
+		show(skipping, skippingShown);
+		show(formatting, formattingShown);
+		assertText("initial", skipping, text, flags, 0);
+
+		for (int i = 0; i < edits; ++i) {
+			if (random.nextInt(200) == 0) {
+				// Switch mask or placeholder, text without mask chars is kept
+				String raw = strip(text, flags);
+				mask = Mask.compile(MASKS[random.nextInt(MASKS.length)]);
+				placeholder = PLACEHOLDERS[random.nextInt(PLACEHOLDERS.length)];
+				int[] cursor = {skipping.getRawCursor()};
+				text = reference(mask.getSource(), raw, placeholder, flags, cursor);
+				for (MaskedText maskedText : new MaskedText[] {skipping, formatting}) {
+					maskedText.setMask(mask);
+					maskedText.setPlaceholder(placeholder);
+					maskedText.parse();
+					maskedText.format();
+				}
+				show(skipping, skippingShown);
+				show(formatting, formattingShown);
+
+				String message = "mask \"" + mask + "\", placeholder '" + placeholder + "'";
+				assertText(message, skipping, text, flags, cursor[0]);
+				assertText(message, formatting, text, flags, cursor[0]);
+				assertEquals(message, text, mask.format(raw, placeholder));
+				continue;
+			}
+
+			RandomEdit edit = RandomEdit.next(random, text.length(), ALPHABET);
+			String edited = edit.apply(text);
+			StringBuilder editedFlags = new StringBuilder(flags)
+					.replace(edit.start, edit.end, repeat('u', edit.insertion.length()));
+			String raw = strip(edited, editedFlags);
+			int[] cursor = {edit.cursor()};
+			// Mask chars are removed before formatting, cursor moves with them
+			for (int j = edited.length() - 1; j >= 0; --j) {
+				if (editedFlags.charAt(j) != 'u' && j < cursor[0])
+					--cursor[0];
+			}
+
+			edit(skipping, skippingShown, edit, true);
+			edit(formatting, formattingShown, edit, false);
+			if (budget != null)
+				budget.countEdit();
+			text = reference(mask.getSource(), raw, placeholder, flags, cursor);
+
+			String message = "mask \"" + mask + "\", edit " + edit + " of \"" + edited + "\"";
+			assertText(message, skipping, text, flags, cursor[0]);
+			assertText(message, formatting, text, flags, cursor[0]);
+			assertEquals(message, text, skippingShown.toString());
+			assertEquals(message, text, formattingShown.toString());
+			assertConforms(message, mask, placeholder, text, flags);
+			assertEquals(message, text, mask.format(strip(text, flags), placeholder));
+		}
+	}
+
+	private static void assertText(String message, MaskedText maskedText, String text, CharSequence flags, int cursor) {
+		assertEquals(message, text, maskedText.toString());
+		for (int i = 0; i < text.length(); ++i) {
+			byte kind = flags.charAt(i) == 'u'
+					? MaskedText.INPUT
+					: flags.charAt(i) == 'l' ? MaskedText.LITERAL : MaskedText.PLACEHOLDER;
+			assertEquals(message + ", kind at " + i, kind, maskedText.getKind(i));
+		}
+		assertEquals(message + ", cursor", cursor, maskedText.getSelectionStart());
+		assertEquals(message + ", cursor", cursor, maskedText.getSelectionEnd());
+	}
+
+	private static void assertConforms(String message, Mask mask, char placeholder, String text, CharSequence flags) {
+		assertEquals(message, mask.length(), text.length());
+		boolean placeholderFound = false;
+		for (int i = 0; i < text.length(); ++i) {
+			char c = text.charAt(i);
+			if (mask.isLiteral(i)) {
+				assertEquals(message, mask.charAt(i), c);
+			} else if (flags.charAt(i) == 'u') {
+				assertFalse(message + ", input after placeholder at " + i, placeholderFound);
+				assertTrue(message + ", bad input at " + i, mask.matches(i, c));
+			} else {
+				assertEquals(message, placeholder, c);
+				placeholderFound = true;
+			}
+		}
+	}
+
+	/**
+	 * Formats text with the same algorithm as MaskedEditText did before masks
+	 * were compiled: mask string is parsed on every pass.
+	 *
+	 * @param mask
+	 * 		Mask string.
+	 * @param raw
+	 * 		Text without mask chars.
+	 * @param placeholder
+	 * 		Placeholder char.
+	 * @param flags
+	 * 		Output: 'u' for input, 'p' for placeholder, 'l' for literal.
+	 * @param cursor
+	 * 		Position of cursor, updated like selection span in Editable.
+	 *
+	 * @return Formatted text.
+	 */
+	private static String reference(String mask, String raw, char placeholder, StringBuilder flags, int[] cursor) {
+		StringBuilder value = new StringBuilder(raw);
+		flags.setLength(0);
+		flags.append(repeat('u', raw.length()));
+		int indexInMask = 0;
+		int indexInText = 0;
+		int maskLength = 0;
+		boolean treatNextCharAsLiteral = false;
+		while (indexInMask < mask.length()) {
+			char charInMask = mask.charAt(indexInMask);
+			if (!treatNextCharAsLiteral && Mask.isMaskChar(charInMask)) {
+				if (indexInText >= value.length()) {
+					insert(value, flags, cursor, indexInText, placeholder, 'p');
+					++indexInText;
+					++maskLength;
+					++indexInMask;
+				} else if (!matches(charInMask, value.charAt(indexInText))) {
+					delete(value, flags, cursor, indexInText);
+				} else {
+					++indexInText;
+					++maskLength;
+					++indexInMask;
+				}
+			} else if (!treatNextCharAsLiteral && charInMask == '\\') {
+				treatNextCharAsLiteral = true;
+				++indexInMask;
+			} else {
+				insert(value, flags, cursor, indexInText, charInMask, 'l');
+				treatNextCharAsLiteral = false;
+				++indexInText;
+				++maskLength;
+				++indexInMask;
+			}
+		}
+		while (value.length() > maskLength) {
+			delete(value, flags, cursor, value.length() - 1);
+		}
+		return value.toString();
+	}
+
+	private static boolean matches(char mask, char value) {
+		switch (mask) {
+			case '?':
+				return true;
+			case 'A':
+				return Character.isLetter(value);
+			case '9':
+				return Character.isDigit(value);
+			case '*':
+				return Character.isDigit(value) || Character.isLetter(value);
+		}
+		fail("Unknown mask char " + mask);
+		return false;
+	}
+
+	private static void insert(StringBuilder value, StringBuilder flags, int[] cursor, int index, char c, char flag) {
+		value.insert(index, c);
+		flags.insert(index, flag);
+		// Selection is marked with SPAN_MARK_MARK, text inserted at cursor stays after it
+		if (index < cursor[0])
+			++cursor[0];
+	}
+
+	private static void delete(StringBuilder value, StringBuilder flags, int[] cursor, int index) {
+		value.deleteCharAt(index);
+		flags.deleteCharAt(index);
+		if (index < cursor[0])
+			--cursor[0];
+	}
+
+	private static String strip(String text, CharSequence flags) {
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); ++i) {
+			if (flags.charAt(i) == 'u')
+				sb.append(text.charAt(i));
+		}
+		return sb.toString();
+	}
+
+	private static String repeat(char c, int count) {
+		StringBuilder sb = new StringBuilder(count);
+		for (int i = 0; i < count; ++i) {
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,189 @@
+package ru.kolotnev.formattedittext;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MaskedTextTest {
+	private static final Mask PHONE = Mask.compile("(999) 999-9999");
+
+	@Test
+	public void typedTextIsFormatted() {
+		Field field = new Field(PHONE, "");
+		field.edit(0, 0, "1a2");
+		field.assertText("(12_) ___-____", 3);
+		field.edit(3, 3, "34567");
+		field.assertText("(123) 456-7___", 11);
+		field.edit(10, 11, "");
+		field.assertText("(123) 456-____", 9);
+	}
+
+	@Test
+	public void skippedEditIsReverted() {
+		Field field = new Field(PHONE, "123");
+		field.select(4);
+		field.edit(4, 4, ")");
+		assertEquals(1, field.skipped);
+		field.assertText("(123) ___-____", 6);
+
+		field.edit(5, 6, "");
+		assertEquals(2, field.skipped);
+		field.assertText("(123) ___-____", 4);
+	}
+
+	@Test
+	public void editsWhileComposingAreFormattedTogether() {
+		Field field = new Field(PHONE, "123");
+		// IME composes text, formatting is deferred
+		field.mirror(6, 6, "4");
+		field.mirror(6, 7, "45");
+		field.select(8);
+		field.update();
+		field.assertText("(123) 45_-____", 8);
+		assertEquals(0, field.skipped);
+
+		// Deleting of placeholder is not skipped after other edits
+		field.mirror(6, 6, "6");
+		field.mirror(13, 14, "");
+		field.select(13);
+		field.update();
+		field.assertText("(123) 645-____", 9);
+		assertEquals(0, field.skipped);
+	}
+
+	@Test
+	public void batchFormatsEditsOnce() {
+		final Field field = new Field(PHONE, "");
+		final int[] runs = {0};
+		Runnable update = new Runnable() {
+			@Override
+			public void run() {
+				++runs[0];
+				field.update();
+			}
+		};
+
+		FormatBatch.begin();
+		try {
+			field.mirror(0, 0, "12");
+			assertTrue(FormatBatch.defer(update));
+			field.mirror(2, 2, "3");
+			field.select(3);
+			assertTrue(FormatBatch.defer(update));
+			assertEquals("123(___) ___-____", field.shown.toString());
+		} finally {
+			FormatBatch.end();
+		}
+		assertEquals(1, runs[0]);
+		field.assertText("(123) ___-____", 4);
+	}
+
+	@Test
+	public void textChangedWithoutNotificationIsTakenFromField() {
+		Field field = new Field(PHONE, "123");
+
+		// Formatted text keeps literals and placeholders
+		field.shown.replace(0, field.shown.length(), "(123) 456-____");
+		field.maskedText.onTextChanged(field.shown, 6, 0, 3);
+		field.select(9);
+		field.update();
+		field.assertText("(123) 456-____", 9);
+		assertEquals("123456", field.maskedText.getRaw());
+
+		// Text of other length is input
+		field.shown.replace(0, field.shown.length(), "98-765");
+		field.maskedText.onTextChanged(field.shown, 0, 0, 0);
+		field.select(6);
+		field.update();
+		field.assertText("(987) 65_-____", 8);
+	}
+
+	@Test
+	public void onlyChangedRegionIsApplied() {
+		Field field = new Field(PHONE, "123");
+		field.mirror(6, 6, "4");
+		field.maskedText.setSelection(7, 7);
+		field.maskedText.parse();
+		field.maskedText.format();
+		assertTrue(field.maskedText.isChanged());
+		assertEquals(9, field.maskedText.getChangeStart());
+		assertEquals(10, field.maskedText.getShownChangeEnd());
+		assertEquals(9, field.maskedText.getChangeEnd());
+		field.apply();
+		assertFalse(field.maskedText.isChanged());
+		field.assertText("(123) 4__-____", 7);
+
+		// Formatting of the same text changes nothing
+		field.maskedText.parse();
+		field.maskedText.format();
+		assertFalse(field.maskedText.isChanged());
+	}
+
+	/**
+	 * Field handled like MaskedEditText handles its Editable.
+	 */
+	private static final class Field {
+		final MaskedText maskedText;
+		final StringBuilder shown = new StringBuilder();
+		int selection = 0;
+		int skipped = 0;
+
+		Field(Mask mask, String raw) {
+			maskedText = new MaskedText(mask, '_');
+			maskedText.setRaw(raw, raw.length());
+			maskedText.format();
+			apply();
+		}
+
+		/**
+		 * Edits field like user, then edit is skipped or text is formatted.
+		 */
+		void edit(int start, int end, String value) {
+			mirror(start, end, value);
+			select(start + value.length());
+			maskedText.setSelection(selection, selection);
+			if (maskedText.skipEdit()) {
+				++skipped;
+				apply();
+			} else {
+				update();
+			}
+		}
+
+		/**
+		 * Edits field without formatting, e.g. while IME is composing.
+		 */
+		void mirror(int start, int end, String value) {
+			shown.replace(start, end, value);
+			maskedText.onTextChanged(shown, start, end - start, value.length());
+		}
+
+		void select(int position) {
+			selection = position;
+		}
+
+		void update() {
+			maskedText.setSelection(selection, selection);
+			maskedText.parse();
+			maskedText.format();
+			apply();
+		}
+
+		void apply() {
+			if (maskedText.isChanged()) {
+				shown.replace(maskedText.getChangeStart(), maskedText.getShownChangeEnd(),
+						maskedText.subSequence(maskedText.getChangeStart(), maskedText.getChangeEnd()).toString());
+				maskedText.markShown();
+			}
+			selection = maskedText.getSelectionEnd();
+		}
+
+		void assertText(String text, int cursor) {
+			assertEquals(text, maskedText.toString());
+			assertEquals(text, shown.toString());
+			assertEquals(cursor, selection);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package ru.kolotnev.formattedittext;
+
+import java.util.Random;
+
+/**
+ * Random edit of text like user makes it: typing, deleting, pasting and
+ * replacing of selection.
+ */
+final class RandomEdit {
+	final int start;
+	final int end;
+	final String insertion;
+
+	private RandomEdit(int start, int end, String insertion) {
+		this.start = start;
+		this.end = end;
+		this.insertion = insertion;
+	}
+
+	/**
+	 * Creates random edit of text.
+	 *
+	 * @param random
+	 * 		Source of randomness.
+	 * @param length
+	 * 		Length of edited text.
+	 * @param alphabet
+	 * 		Characters which may be inserted.
+	 *
+	 * @return Random edit.
+	 */
+	static RandomEdit next(Random random, int length, String alphabet) {
+		int start = random.nextInt(length + 1);
+		switch (random.nextInt(5)) {
+			case 0:
+				// Type one character
+				return new RandomEdit(start, start, randomString(random, alphabet, 1));
+			case 1:
+				// Delete one character with backspace
+				return start == 0
+						? new RandomEdit(0, 0, "")
+						: new RandomEdit(start - 1, start, "");
+			case 2:
+				// Paste
+				return new RandomEdit(start, start, randomString(random, alphabet, 1 + random.nextInt(12)));
+			case 3:
+				// Replace selection
+				int end = start + random.nextInt(length - start + 1);
+				return new RandomEdit(start, end, randomString(random, alphabet, random.nextInt(4)));
+			default:
+				// Type at the end
+				return new RandomEdit(length, length, randomString(random, alphabet, 1));
+		}
+	}
+
+	/**
+	 * Applies edit to text.
+	 *
+	 * @param text
+	 * 		Edited text.
+	 *
+	 * @return Text after edit.
+	 */
+	String apply(String text) {
+		return text.substring(0, start) + insertion + text.substring(end);
+	}
+
+	/**
+	 * Returns position of cursor after edit.
+	 *
+	 * @return Position right after inserted text.
+	 */
+	int cursor() {
+		return start + insertion.length();
+	}
+
+	private static String randomString(Random random, String alphabet, int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; ++i) {
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return "[" + start + ", " + end + ") -> \"" + insertion + "\"";
+	}
+}